@@ -9,12 +9,42 @@ repositories {
     mavenCentral()
 }
 
+// JMH benchmarks live in src/jmh and see the main classes (and the test classes, for
+// reference implementations such as the old parser); run with ./gradlew jmh
+sourceSets {
+    create("jmh") {
+        compileClasspath += sourceSets.main.get().output + sourceSets.test.get().output
+        runtimeClasspath += sourceSets.main.get().output + sourceSets.test.get().output
+    }
+}
+
+val jmhVersion = "1.37"
+
 dependencies {
     testImplementation(platform("org.junit:junit-bom:5.10.0"))
     testImplementation("org.junit.jupiter:junit-jupiter")
     testRuntimeOnly("org.junit.platform:junit-platform-launcher")
+
+    "jmhImplementation"("org.openjdk.jmh:jmh-core:$jmhVersion")
+    "jmhAnnotationProcessor"("org.openjdk.jmh:jmh-generator-annprocess:$jmhVersion")
 }
 
 tasks.test {
     useJUnitPlatform()
-}
\ No newline at end of file
+}
+
+// Results go to build/reports/jmh/results.json. Extra JMH options via -PjmhArgs, e.g.
+// ./gradlew jmh -PjmhArgs="EvalBenchmark -p rows=1000 -f 1"
+tasks.register<JavaExec>("jmh") {
+    group = "benchmark"
+    description = "Runs the JMH benchmarks and writes the results as JSON."
+    classpath = sourceSets["jmh"].runtimeClasspath
+    mainClass.set("org.openjdk.jmh.Main")
+    val results = layout.buildDirectory.file("reports/jmh/results.json")
+    doFirst {
+        val out = results.get().asFile
+        out.parentFile.mkdirs()
+        args = listOf("-rf", "json", "-rff", out.absolutePath) +
+                (project.findProperty("jmhArgs") as String? ?: "").split(" ").filter { it.isNotBlank() }
+    }
+}
@@ -0,0 +1,90 @@
+package project.spreadsheet.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+import project.spreadsheet.sheet.Address;
+import project.spreadsheet.sheet.Spreadsheet;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Many writers editing one sheet at once, as ingestion threads (one per feed) do: each
+ * thread rewrites numbers of its own region, and every number has a formula depending on it.
+ * Regions are either separate bands of rows or rows interleaved between the threads (so
+ * all of them write the same blocks); {@code global} funnels every edit through one lock,
+ * as callers had to before the store was striped.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(16)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ContentionBenchmark {
+
+    /** Rows written by each thread. */
+    @Param({"1024"})
+    public int rowsPerThread;
+
+    @Param({"bands", "interleaved"})
+    public String layout;
+
+    @Param({"false", "true"})
+    public boolean global;
+
+    private Spreadsheet sheet;
+    private int threads;
+
+    @Setup
+    public void setUp(ThreadParams params) {
+        sheet = new Spreadsheet();
+        threads = params.getThreadCount();
+        for (int r = 1; r <= threads * rowsPerThread; r++) {
+            sheet.setRawContent(new Address(1, r), "0");
+            sheet.setRawContent(new Address(2, r), "=A" + r + "*2");
+        }
+    }
+
+    /** Rows of one writer thread. */
+    @State(Scope.Thread)
+    public static class Region {
+        int index;
+        Random rnd;
+
+        @Setup
+        public void setUp(ThreadParams params) {
+            index = params.getThreadIndex();
+            rnd = new Random(index);
+        }
+    }
+
+    @Benchmark
+    public List<Address> edit(Region region) {
+        int k = region.rnd.nextInt(rowsPerThread);
+        int row = layout.equals("bands")
+                ? region.index * rowsPerThread + k + 1
+                : k * threads + region.index + 1;
+        Address addr = new Address(1, row);
+        String raw = Integer.toString(region.rnd.nextInt(1000));
+        if (global) {
+            synchronized (this) {
+                return sheet.setRawContent(addr, raw);
+            }
+        }
+        return sheet.setRawContent(addr, raw);
+    }
+}
@@ -0,0 +1,66 @@
+package project.spreadsheet.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import project.spreadsheet.bench.Workbooks.Shape;
+import project.spreadsheet.calc.Recalculator;
+import project.spreadsheet.formula.EvalContext;
+import project.spreadsheet.sheet.Address;
+import project.spreadsheet.sheet.Spreadsheet;
+
+import java.util.concurrent.TimeUnit;
+
+/** {@link EvalContext#getCellValue} after an edit (through the recalculation order) and from the cache. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class EvalBenchmark {
+
+    @Param({"CHAIN", "FAN_IN", "GRID"})
+    public Shape shape;
+
+    @Param({"1000", "100000"})
+    public int rows;
+
+    private Spreadsheet sheet;
+    private EvalContext ctx;
+    private Recalculator recalculator;
+    private Address root;
+    private Address sink;
+    private int edits;
+
+    @Setup
+    public void setUp() {
+        sheet = Workbooks.sheet(shape, rows);
+        ctx = new EvalContext(sheet);
+        recalculator = new Recalculator(sheet, ctx);
+        root = Address.parse("A1");
+        sink = Address.parse(Workbooks.sink(shape, rows));
+        // in dependency order: a cold read of a long chain would recurse through all of it
+        recalculator.recalculate(sheet.setRawContent(root, "1"));
+    }
+
+    /** Edit A1 and recompute every cell it reaches. */
+    @Benchmark
+    public double editAndRecalculate() {
+        recalculator.recalculate(sheet.setRawContent(root, Integer.toString(++edits % 1000)));
+        return ctx.getCellValue(sink);
+    }
+
+    @Benchmark
+    public double cachedRead() {
+        return ctx.getCellValue(sink);
+    }
+}
@@ -0,0 +1,64 @@
+package project.spreadsheet.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import project.spreadsheet.formula.Expr;
+import project.spreadsheet.formula.FunctionRegistry;
+import project.spreadsheet.parser.Parser;
+import project.spreadsheet.parser.ShuntingYardParser;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * {@link Parser#parse} on a mix of formulas, with and without the optimizer, against the
+ * old {@link ShuntingYardParser} (which never optimizes); time per formula.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ParseBenchmark {
+
+    private static final int FORMULAS = 10_000;
+
+    /** Rows the references point into (longer row numbers, wider ranges). */
+    @Param({"1000", "1000000"})
+    public int rows;
+
+    @Param({"optimized", "single-pass", "shunting-yard"})
+    public String parser;
+
+    private String[] formulas;
+    private Function<String, Expr> parse;
+
+    @Setup
+    public void setUp() {
+        formulas = Workbooks.formulas(FORMULAS, rows);
+        parse = switch (parser) {
+            case "optimized" -> new Parser(true)::parse;
+            case "single-pass" -> new Parser(false)::parse;
+            case "shunting-yard" -> new ShuntingYardParser(FunctionRegistry.standard())::parse;
+            default -> throw new IllegalArgumentException("Unknown parser: " + parser);
+        };
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FORMULAS)
+    public void parse(Blackhole bh) {
+        for (String f : formulas) bh.consume(parse.apply(f));
+    }
+}
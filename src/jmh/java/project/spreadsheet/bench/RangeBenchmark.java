@@ -0,0 +1,76 @@
+package project.spreadsheet.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import project.spreadsheet.formula.EvalContext;
+import project.spreadsheet.sheet.Address;
+import project.spreadsheet.sheet.SheetFragment;
+import project.spreadsheet.sheet.Spreadsheet;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Range aggregates over a block of numbers: one cell of the range is edited, then
+ * SUM, AVG and MAX over the whole block are read again, with or without the range index.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class RangeBenchmark {
+
+    @Param({"1000", "100000"})
+    public int rows;
+
+    /** Width of the range in columns. */
+    @Param({"1", "8"})
+    public int columns;
+
+    @Param({"true", "false"})
+    public boolean indexed;
+
+    private Spreadsheet sheet;
+    private EvalContext ctx;
+    private final Address[] results = new Address[3];
+    private Random rnd;
+
+    @Setup
+    public void setUp() {
+        sheet = new Spreadsheet();
+        rnd = new Random(7);
+        SheetFragment numbers = new SheetFragment();
+        for (int c = 1; c <= columns; c++) {
+            for (int r = 1; r <= rows; r++) numbers.setNumber(c, r, rnd.nextInt(1000));
+        }
+        sheet.merge(numbers);
+
+        String range = "A1:" + new Address(columns, rows);
+        String[] functions = {"SUM", "AVG", "MAX"};
+        for (int k = 0; k < results.length; k++) {
+            results[k] = new Address(columns + 2, k + 1);
+            sheet.setRawContent(results[k], "=" + functions[k] + "(" + range + ")");
+        }
+        ctx = new EvalContext(sheet, indexed);
+    }
+
+    @Benchmark
+    public double editAndAggregate() {
+        Address edited = new Address(1 + rnd.nextInt(columns), 1 + rnd.nextInt(rows));
+        sheet.setRawContent(edited, Integer.toString(rnd.nextInt(1000)));
+        double v = 0;
+        for (Address a : results) v += ctx.getCellValue(a);
+        return v;
+    }
+}
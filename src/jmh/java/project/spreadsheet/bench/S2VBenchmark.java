@@ -0,0 +1,76 @@
+package project.spreadsheet.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import project.spreadsheet.bench.Workbooks.Shape;
+import project.spreadsheet.io.S2VReader;
+import project.spreadsheet.io.S2VWriter;
+import project.spreadsheet.sheet.Spreadsheet;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/** {@link S2VReader} (mapped and line by line) and {@link S2VWriter} on a temporary file. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class S2VBenchmark {
+
+    @Param({"FAN_IN", "GRID"})
+    public Shape shape;
+
+    @Param({"10000", "100000"})
+    public int rows;
+
+    private Path input;
+    private Path output;
+    private Spreadsheet sheet;
+
+    @Setup
+    public void setUp() throws IOException {
+        input = Files.createTempFile("bench", ".s2v");
+        output = Files.createTempFile("bench-out", ".s2v");
+        Files.writeString(input, Workbooks.s2v(shape, rows), StandardCharsets.UTF_8);
+        sheet = new S2VReader().read(input);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(input);
+        Files.deleteIfExists(output);
+    }
+
+    @Benchmark
+    public Spreadsheet read() throws IOException {
+        return new S2VReader().read(input);
+    }
+
+    @Benchmark
+    public Spreadsheet readLineByLine() throws IOException {
+        try (Reader in = Files.newBufferedReader(input)) {
+            return new S2VReader().read(in);
+        }
+    }
+
+    @Benchmark
+    public void write() throws IOException {
+        new S2VWriter().write(sheet, output);
+    }
+}
@@ -0,0 +1,86 @@
+package project.spreadsheet.bench;
+
+import project.spreadsheet.io.S2VReader;
+import project.spreadsheet.sheet.Spreadsheet;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.util.Random;
+
+/**
+ * Synthetic workbooks for the benchmarks, deterministic for a given shape and size.
+ * Every shape has a root cell (A1) whose edit reaches the sink cell.
+ */
+public final class Workbooks {
+
+    public enum Shape {
+        /** A1 = 1, A(r) = A(r-1) + 1: one long dependency chain, sink A(rows). */
+        CHAIN,
+        /** A(r) numbers, B(r) = A(r) * 2, C1 = SUM(B1:B(rows)): everything flows into C1. */
+        FAN_IN,
+        /** Rows of numbers, text and formulas reading their own row and the one above, sink F(rows). */
+        GRID
+    }
+
+    private Workbooks() {
+    }
+
+    /** The workbook as S2V text (formulas with ',' separators, as in files). */
+    public static String s2v(Shape shape, int rows) {
+        StringBuilder sb = new StringBuilder(rows * 32);
+        Random rnd = new Random(rows);
+        for (int r = 1; r <= rows; r++) {
+            switch (shape) {
+                case CHAIN -> sb.append(r == 1 ? "1" : "=A" + (r - 1) + "+1");
+                case FAN_IN -> {
+                    sb.append(rnd.nextInt(1000)).append(";=A").append(r).append("*2");
+                    if (r == 1) sb.append(";=SUM(B1:B").append(rows).append(')');
+                }
+                case GRID -> {
+                    sb.append(rnd.nextInt(1000)).append(';')
+                            .append(rnd.nextInt(100_000) / 100.0).append(';')
+                            .append("item").append(r).append(';')
+                            .append("=A").append(r).append("*B").append(r).append(';')
+                            .append("=MAX(A").append(r).append(",B").append(r).append(",1)").append(';')
+                            .append(r == 1 ? "=D1" : "=F" + (r - 1) + "+D" + r + "/E" + r);
+                }
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    public static Spreadsheet sheet(Shape shape, int rows) {
+        try {
+            return new S2VReader().read(new StringReader(s2v(shape, rows)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Address of the cell every edit of A1 eventually reaches. */
+    public static String sink(Shape shape, int rows) {
+        return switch (shape) {
+            case CHAIN -> "A" + rows;
+            case FAN_IN -> "C1";
+            case GRID -> "F" + rows;
+        };
+    }
+
+    /** Formula texts (without '='): cell arithmetic, ranges and nested calls over {@code rows} rows. */
+    public static String[] formulas(int count, int rows) {
+        Random rnd = new Random(42);
+        String[] out = new String[count];
+        for (int i = 0; i < count; i++) {
+            int row = 1 + rnd.nextInt(rows);
+            out[i] = switch (i % 4) {
+                case 0 -> "A" + row + "*2+B" + row + " - 1.5";
+                case 1 -> "SUM(A1:A" + row + ")/" + (1 + rnd.nextInt(9));
+                case 2 -> "(C" + row + "+D" + (row + 1) + ")*(E" + row + "-F" + row + ")";
+                default -> "MAX(A" + row + ", SIN(B" + row + "), 3) + AVG(C1:D" + row + ")";
+            };
+        }
+        return out;
+    }
+}
@@ -8,6 +8,7 @@ import project.spreadsheet.io.S2VWriter;
 import project.spreadsheet.parser.Parser;
 import project.spreadsheet.sheet.Spreadsheet;
 
+import java.io.IOException;
 import java.nio.file.Path;
 import java.util.Scanner;
 
@@ -122,6 +123,11 @@ public class Main {
             }
         }
 
+        try {
+            ctrl.close(); // flush journaled edits
+        } catch (IOException ex) {
+            System.out.println("Error: " + ex.getMessage());
+        }
         scanner.close();
     }
 }
\ No newline at end of file
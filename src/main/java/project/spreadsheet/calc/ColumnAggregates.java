@@ -0,0 +1,169 @@
+package project.spreadsheet.calc;
+
+import project.spreadsheet.formula.Aggregator;
+import project.spreadsheet.sheet.CellBlock;
+import project.spreadsheet.sheet.Spreadsheet;
+
+import java.util.BitSet;
+
+/**
+ * Tree of SUM/MIN/MAX over one column. Each leaf summarizes one chunk of
+ * {@link CellBlock#ROWS} rows (the rows of one block), summed top to bottom from 0;
+ * the node of level {@code l} and index {@code j} covers chunks
+ * {@code [j << l, (j + 1) << l)} and adds its two halves, left + right.
+ * <p>
+ * A run of whole chunks is folded as the aligned nodes {@link #span} splits it into, left
+ * to right. {@link project.spreadsheet.formula.EvalContext#foldRange} adds up the chunks
+ * it scans in exactly these nodes, so an indexed aggregate has the same bits as a scanned
+ * one, while a query only reads O(log n) nodes. Leaves are marked stale (with all their
+ * ancestors) on edits and rebuilt lazily; a leaf that still holds an uncomputed formula
+ * cannot be rebuilt until its formulas are computed.
+ */
+public final class ColumnAggregates {
+
+    private final int column;
+    private int chunks;
+    private int leaves;   // capacity, power of two
+    // [level][index]
+    private double[][] sum;
+    private double[][] min;
+    private double[][] max;
+    private BitSet[] stale;
+
+    ColumnAggregates(int column, int chunks) {
+        this.column = column;
+        this.sum = new double[0][];
+        this.min = new double[0][];
+        this.max = new double[0][];
+        this.stale = new BitSet[0];
+        ensureChunks(chunks);
+    }
+
+    public int getColumn() {
+        return column;
+    }
+
+    /**
+     * Number of chunks of the node starting at chunk {@code first} when the whole chunks
+     * {@code [first, last]} are split into aligned nodes, left to right: the largest
+     * power of two that {@code first} is a multiple of and that does not reach past {@code last}.
+     */
+    public static int span(int first, int last) {
+        int fits = Integer.highestOneBit(last - first + 1);
+        return first == 0 ? fits : Math.min(Integer.lowestOneBit(first), fits);
+    }
+
+    /** Make sure chunks [0, chunks) are covered; new chunks start stale. */
+    void ensureChunks(int chunks) {
+        if (chunks <= this.chunks) return;
+        if (chunks > leaves) grow(Math.max(chunks, 2 * leaves));
+        for (int c = this.chunks; c < chunks; c++) invalidate(c, chunks);
+        this.chunks = chunks;
+    }
+
+    // new capacity: leaves are kept, inner nodes are rebuilt on demand
+    private void grow(int capacity) {
+        int n = Integer.highestOneBit(capacity - 1) << 1;
+        int levels = Integer.numberOfTrailingZeros(n) + 1;
+        double[][] s = new double[levels][];
+        double[][] mn = new double[levels][];
+        double[][] mx = new double[levels][];
+        BitSet[] st = new BitSet[levels];
+        for (int l = 0; l < levels; l++) {
+            s[l] = new double[n >> l];
+            mn[l] = new double[n >> l];
+            mx[l] = new double[n >> l];
+            st[l] = new BitSet();
+        }
+        if (leaves > 0) {
+            System.arraycopy(sum[0], 0, s[0], 0, leaves);
+            System.arraycopy(min[0], 0, mn[0], 0, leaves);
+            System.arraycopy(max[0], 0, mx[0], 0, leaves);
+            st[0] = stale[0];
+            for (int l = 1; l < levels; l++) st[l].set(0, n >> l);
+        }
+        sum = s;
+        min = mn;
+        max = mx;
+        stale = st;
+        leaves = n;
+    }
+
+    void invalidate(int chunk) {
+        invalidate(chunk, chunks);
+    }
+
+    private void invalidate(int chunk, int limit) {
+        if (chunk >= limit) return;
+        for (int l = 0; l < stale.length; l++) stale[l].set(chunk >> l);
+    }
+
+    void invalidateAll() {
+        for (int l = 0; l < stale.length; l++) stale[l].set(0, leaves >> l);
+    }
+
+    public boolean isStale(int chunk) {
+        return stale[0].get(chunk);
+    }
+
+    /** First stale chunk at or after {@code from}, or -1. */
+    public int nextStale(int from) {
+        return stale[0].nextSetBit(from);
+    }
+
+    /**
+     * Recompute one leaf from the cell block. Fails (leaf stays stale) when the chunk
+     * contains a formula whose value is not computed yet.
+     */
+    public boolean refresh(int chunk, Spreadsheet sheet) {
+        int firstRow = chunk * CellBlock.ROWS + 1;
+        CellBlock block = sheet.getBlock(column, firstRow);
+
+        double s = 0.0, mn = 0.0, mx = 0.0;
+        if (block != null) {
+            int base = CellBlock.index(column, firstRow);
+            mn = Double.POSITIVE_INFINITY;
+            mx = Double.NEGATIVE_INFINITY;
+            for (int i = base; i < base + CellBlock.ROWS; i++) {
+                if (!block.hasValue(i)) return false;
+                double v = block.value(i);
+                s += v;
+                mn = Math.min(mn, v);
+                mx = Math.max(mx, v);
+            }
+        }
+
+        sum[0][chunk] = s;
+        min[0][chunk] = mn;
+        max[0][chunk] = mx;
+        stale[0].clear(chunk);
+        return true;
+    }
+
+    /**
+     * Fold the whole chunks [from, to] (no leaf among them stale) into {@code agg}, one
+     * summary per node of {@link #span}.
+     */
+    public void query(int from, int to, Aggregator agg) {
+        for (int k = from; k <= to; ) {
+            int size = span(k, to);
+            int level = Integer.numberOfTrailingZeros(size);
+            int j = k >> level;
+            pull(level, j);
+            agg.acceptSummary(sum[level][j], min[level][j], max[level][j], (long) size * CellBlock.ROWS);
+            k += size;
+        }
+    }
+
+    // bring a node up to date from its children
+    private void pull(int level, int j) {
+        if (level == 0 || !stale[level].get(j)) return;
+        int l = 2 * j, r = l + 1;
+        pull(level - 1, l);
+        pull(level - 1, r);
+        sum[level][j] = sum[level - 1][l] + sum[level - 1][r];
+        min[level][j] = Math.min(min[level - 1][l], min[level - 1][r]);
+        max[level][j] = Math.max(max[level - 1][l], max[level - 1][r]);
+        stale[level].clear(j);
+    }
+}
@@ -1,4 +1,298 @@
 package project.spreadsheet.calc;
 
+import project.spreadsheet.formula.BinaryOp;
+import project.spreadsheet.formula.CellRef;
+import project.spreadsheet.formula.Expr;
+import project.spreadsheet.formula.FuncCall;
+import project.spreadsheet.formula.RangeExpr;
+import project.spreadsheet.formula.RelCellRef;
+import project.spreadsheet.formula.RelRangeExpr;
+import project.spreadsheet.formula.SharedExpr;
+import project.spreadsheet.formula.SharedScope;
+import project.spreadsheet.sheet.Address;
+import project.spreadsheet.sheet.Range;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dependency graph between formula cells and the cells they read.
+ * - precedents: cells/ranges a formula reads (taken from CellRef/RangeExpr nodes)
+ * - dependents: formulas that read a given cell (directly or through a range)
+ * Used to find which cells become stale when one cell is edited, and which cells are
+ * on a reference cycle.
+ * <p>
+ * {@link #setFormula}, {@link #clear} and {@link #dirtyOrder} may be called by several
+ * threads at once, as long as no two of them change the same cell at the same time: each
+ * map is partitioned by key (cell, or column for ranges) and locked per key only, so
+ * writers of different cells do not wait for each other. A traversal sees every edge
+ * added before it started. Cycle flags set by traversals racing with edits of the same
+ * cycle may lag behind until the next traversal through it.
+ */
 public class DependencyGraph {
+
+    // formula cell -> cells it references directly
+    private final Map<Address, Set<Address>> precedents = new ConcurrentHashMap<>();
+
+    // formula cell -> ranges it references
+    private final Map<Address, List<Range>> rangePrecedents = new ConcurrentHashMap<>();
+
+    // referenced cell -> formula cells that reference it directly (concurrent sets)
+    private final Map<Address, Set<Address>> dependents = new ConcurrentHashMap<>();
+
+    // column -> ranges covering that column (with the formula cell that reads them);
+    // each list is its own lock
+    private final Map<Integer, List<RangeDependent>> rangeDependents = new ConcurrentHashMap<>();
+
+    // formula cells on a cycle, as of the last traversal that reached them
+    private final Set<Address> cyclic = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Replace the precedents of {@code cell} with the references found in {@code ast}.
+     * Relative references (template bodies) are resolved against {@code cell}.
+     */
+    public void setFormula(Address cell, Expr ast) {
+        clear(cell);
+
+        Set<Address> refs = new LinkedHashSet<>();
+        List<Range> ranges = new ArrayList<>();
+        collectReferences(ast, cell, refs, ranges);
+
+        if (!refs.isEmpty()) {
+            precedents.put(cell, refs);
+            for (Address ref : refs) {
+                dependents.compute(ref, (a, deps) -> {
+                    if (deps == null) deps = ConcurrentHashMap.newKeySet();
+                    deps.add(cell);
+                    return deps;
+                });
+            }
+        }
+        if (!ranges.isEmpty()) {
+            rangePrecedents.put(cell, ranges);
+            for (Range r : ranges) {
+                RangeDependent rd = new RangeDependent(r, cell);
+                for (int col = r.getStart().getColumn(); col <= r.getEnd().getColumn(); col++) {
+                    rangeDependents.compute(col, (c, list) -> {
+                        if (list == null) list = new ArrayList<>();
+                        synchronized (list) {
+                            list.add(rd);
+                        }
+                        return list;
+                    });
+                }
+            }
+        }
+    }
+
+    /** Remove all precedents of {@code cell} (e.g. it no longer holds a formula). */
+    public void clear(Address cell) {
+        cyclic.remove(cell);
+        Set<Address> refs = precedents.remove(cell);
+        if (refs != null) {
+            for (Address ref : refs) {
+                dependents.computeIfPresent(ref, (a, deps) -> {
+                    deps.remove(cell);
+                    return deps.isEmpty() ? null : deps;
+                });
+            }
+        }
+
+        List<Range> ranges = rangePrecedents.remove(cell);
+        if (ranges != null) {
+            for (Range r : ranges) {
+                for (int col = r.getStart().getColumn(); col <= r.getEnd().getColumn(); col++) {
+                    rangeDependents.computeIfPresent(col, (c, list) -> {
+                        synchronized (list) {
+                            list.removeIf(rd -> rd.cell.equals(cell));
+                            return list.isEmpty() ? null : list;
+                        }
+                    });
+                }
+            }
+        }
+    }
+
+    /** Cells referenced directly by the formula in {@code cell} (ranges not expanded). */
+    public Set<Address> getPrecedents(Address cell) {
+        return Collections.unmodifiableSet(precedents.getOrDefault(cell, Set.of()));
+    }
+
+    /** Ranges referenced by the formula in {@code cell}. */
+    public List<Range> getRangePrecedents(Address cell) {
+        return Collections.unmodifiableList(rangePrecedents.getOrDefault(cell, List.of()));
+    }
+
+    /** Formula cells that read {@code cell}, either directly or through a range. */
+    public Set<Address> getDependents(Address cell) {
+        Set<Address> out = new LinkedHashSet<>(dependents.getOrDefault(cell, Set.of()));
+        List<RangeDependent> list = rangeDependents.get(cell.getColumn());
+        if (list != null) {
+            synchronized (list) {
+                for (RangeDependent rd : list) {
+                    if (rd.range.contains(cell.getColumn(), cell.getRow())) out.add(rd.cell);
+                }
+            }
+        }
+        return out;
+    }
+
+    /**
+     * {@code changed} plus all of its transitive dependents, in topological order
+     * (every cell comes after the cells it reads). Cells on a cycle are still returned,
+     * in some order.
+     * The same pass updates the cycle flags of every returned cell (see {@link #getCyclicCells}):
+     * any cycle an edit creates or breaks runs through the edited cell, so all of its
+     * cells are reached.
+     */
+    public List<Address> dirtyOrder(Address changed) {
+        return traverse(List.of(changed));
+    }
+
+    /** Same for several changed cells at once: each dependent appears once, after all it reads. */
+    public List<Address> dirtyOrder(Collection<Address> changed) {
+        return traverse(changed);
+    }
+
+    /** Cells currently known to be on a reference cycle (live, read-only view). */
+    public Set<Address> getCyclicCells() {
+        return Collections.unmodifiableSet(cyclic);
+    }
+
+    public boolean isCyclic(Address cell) {
+        return cyclic.contains(cell);
+    }
+
+    /**
+     * Flag the cycles reachable from {@code cell}. Needed for formulas added without
+     * {@link #dirtyOrder} being run (bulk loads); edits keep the flags current themselves.
+     */
+    public void findCycles(Address cell) {
+        traverse(List.of(cell));
+    }
+
+    /** Same for several cells, in one traversal. */
+    public void findCycles(Collection<Address> cells) {
+        traverse(cells);
+    }
+
+    // Tarjan's strongly connected components over dependents, iterative; the DFS post-order,
+    // reversed, is the topological order
+    private List<Address> traverse(Collection<Address> starts) {
+        List<Address> postOrder = new ArrayList<>();
+        Map<Address, int[]> marks = new HashMap<>();            // cell -> {index, lowlink, on stack}
+        Deque<Address> components = new ArrayDeque<>();
+        Deque<Address> path = new ArrayDeque<>();
+        Deque<Iterator<Address>> stack = new ArrayDeque<>();
+        Set<Address> selfLoops = new HashSet<>();
+
+        for (Address start : starts) {
+            if (marks.containsKey(start)) continue;
+            int first = marks.size();
+            marks.put(start, new int[]{first, first, 1});
+            components.push(start);
+            path.push(start);
+            stack.push(getDependents(start).iterator());
+            visitFrom(marks, components, path, stack, selfLoops, postOrder);
+        }
+
+        Collections.reverse(postOrder);
+        return postOrder;
+    }
+
+    // one DFS of traverse, from the root already on the stacks
+    private void visitFrom(Map<Address, int[]> marks, Deque<Address> components, Deque<Address> path,
+                           Deque<Iterator<Address>> stack, Set<Address> selfLoops, List<Address> postOrder) {
+        while (!stack.isEmpty()) {
+            Address v = path.peek();
+            int[] vm = marks.get(v);
+            Iterator<Address> it = stack.peek();
+            if (it.hasNext()) {
+                Address w = it.next();
+                if (w.equals(v)) selfLoops.add(v);
+                int[] wm = marks.get(w);
+                if (wm == null) {
+                    int index = marks.size();
+                    marks.put(w, new int[]{index, index, 1});
+                    components.push(w);
+                    path.push(w);
+                    stack.push(getDependents(w).iterator());
+                } else if (wm[2] == 1) {
+                    vm[1] = Math.min(vm[1], wm[0]);
+                }
+                continue;
+            }
+
+            stack.pop();
+            path.pop();
+            postOrder.add(v);
+            if (!path.isEmpty()) {
+                int[] parent = marks.get(path.peek());
+                parent[1] = Math.min(parent[1], vm[1]);
+            }
+            if (vm[1] == vm[0]) {
+                // v is the root of a component: pop it and flag it if it is a cycle
+                Address top = components.pop();
+                marks.get(top)[2] = 0;
+                if (top.equals(v)) {
+                    if (selfLoops.contains(v)) cyclic.add(v); else cyclic.remove(v);
+                } else {
+                    cyclic.add(top);
+                    do {
+                        top = components.pop();
+                        marks.get(top)[2] = 0;
+                        cyclic.add(top);
+                    } while (!top.equals(v));
+                }
+            }
+        }
+    }
+
+    /** Walk an AST and collect cell references and ranges. */
+    public static void collectReferences(Expr e, Set<Address> refs, List<Range> ranges) {
+        collectReferences(e, null, refs, ranges);
+    }
+
+    /** Same, resolving relative references against {@code origin} (skipped when null). */
+    public static void collectReferences(Expr e, Address origin, Set<Address> refs, List<Range> ranges) {
+        if (e instanceof CellRef ref) {
+            refs.add(ref.getAddress());
+        } else if (e instanceof RangeExpr re) {
+            ranges.add(re.getRange());
+        } else if (e instanceof RelCellRef ref) {
+            if (origin != null) refs.add(ref.at(origin.getColumn(), origin.getRow()));
+        } else if (e instanceof RelRangeExpr re) {
+            if (origin != null) ranges.add(re.at(origin.getColumn(), origin.getRow()));
+        } else if (e instanceof BinaryOp op) {
+            collectReferences(op.getLeft(), origin, refs, ranges);
+            collectReferences(op.getRight(), origin, refs, ranges);
+        } else if (e instanceof FuncCall fc) {
+            for (Expr arg : fc.getArgs()) collectReferences(arg, origin, refs, ranges);
+        } else if (e instanceof SharedExpr se) {
+            collectReferences(se.getExpr(), origin, refs, ranges);
+        } else if (e instanceof SharedScope sc) {
+            collectReferences(sc.getBody(), origin, refs, ranges);
+        }
+    }
+
+    private static final class RangeDependent {
+        final Range range;
+        final Address cell;
+
+        RangeDependent(Range range, Address cell) {
+            this.range = range;
+            this.cell = cell;
+        }
+    }
 }
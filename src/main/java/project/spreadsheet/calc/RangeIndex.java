@@ -0,0 +1,58 @@
+package project.spreadsheet.calc;
+
+import project.spreadsheet.sheet.CellBlock;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Per-column aggregate indexes for range functions. A column gets an index only
+ * once it has been aggregated over often enough (HOT_QUERIES range queries of at
+ * least MIN_ROWS rows); other columns are simply scanned.
+ * Only {@link #invalidate} may be called by several threads (concurrent writers), each
+ * column index being its own lock; parallel recalculation workers bypass the index.
+ */
+public class RangeIndex {
+
+    static final int HOT_QUERIES = 3;
+    public static final int MIN_ROWS = 4 * CellBlock.ROWS;
+
+    private final Map<Integer, Integer> queryCounts = new HashMap<>();
+    private final Map<Integer, ColumnAggregates> columns = new HashMap<>();
+
+    /**
+     * Index for {@code column} covering rows up to {@code lastRow}, or null while the
+     * column is not hot yet. Every call counts as one query of the column.
+     */
+    public ColumnAggregates lookup(int column, int lastRow) {
+        int chunks = CellBlock.blockRow(lastRow) + 1;
+        ColumnAggregates idx = columns.get(column);
+        if (idx == null) {
+            int n = queryCounts.merge(column, 1, Integer::sum);
+            if (n < HOT_QUERIES) return null;
+            queryCounts.remove(column);
+            idx = new ColumnAggregates(column, chunks);
+            columns.put(column, idx);
+        }
+        idx.ensureChunks(chunks);
+        return idx;
+    }
+
+    /** A cell's value changed (edit or invalidated formula). */
+    public void invalidate(int column, int row) {
+        ColumnAggregates idx = columns.get(column);
+        if (idx == null) return;
+        synchronized (idx) {
+            idx.invalidate(CellBlock.blockRow(row));
+        }
+    }
+
+    /** Every value may have changed (e.g. all cached formula values were dropped); columns stay hot. */
+    public void invalidateAll() {
+        for (ColumnAggregates idx : columns.values()) idx.invalidateAll();
+    }
+
+    public boolean isIndexed(int column) {
+        return columns.containsKey(column);
+    }
+}
@@ -0,0 +1,187 @@
+package project.spreadsheet.calc;
+
+import project.spreadsheet.formula.EvalContext;
+import project.spreadsheet.sheet.Address;
+import project.spreadsheet.sheet.CellBlock;
+import project.spreadsheet.sheet.Spreadsheet;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Recomputes stale cells after an edit, in the order given by the dependency graph.
+ * Cells that fail to evaluate (cycles, bad functions) stay invalid, so the error
+ * is reported again when the cell is read.
+ */
+public class Recalculator {
+
+    // cells evaluated by one fork/join leaf task
+    private static final int LEAF_SIZE = 256;
+
+    private final Spreadsheet sheet;
+    private final EvalContext ctx;
+
+    // counters of the contexts parallel workers evaluated in, added up as their leaves finish
+    private final LongAdder workerMisses = new LongAdder();
+    private final LongAdder workerHits = new LongAdder();
+    private final LongAdder workerRangeCells = new LongAdder();
+
+    public Recalculator(Spreadsheet sheet) {
+        this(sheet, new EvalContext(sheet));
+    }
+
+    public Recalculator(Spreadsheet sheet, EvalContext ctx) {
+        this.sheet = sheet;
+        this.ctx = ctx;
+    }
+
+    /** Evaluate the given cells in order; precedents must come before dependents. */
+    public void recalculate(Iterable<Address> order) {
+        for (Address addr : order) {
+            evaluate(ctx, addr);
+        }
+    }
+
+    /** Evaluate every used cell (e.g. after loading a file). */
+    public void recalculateAll() {
+        recalculate(sheet.getUsedAddresses());
+    }
+
+    /**
+     * Evaluate every stale formula cell on {@code pool}. Stale formulas are split into
+     * topological levels (each cell is one level above the stale formulas it reads);
+     * the cells of a level are independent and are evaluated in parallel, one level
+     * after the other. Values are identical to serial evaluation.
+     * Cells on a cycle, and everything depending on them, are left stale; the cycles are
+     * flagged in the dependency graph, as serial evaluation does.
+     * A lazily loaded sheet is recalculated serially: reading its bands is not thread-safe.
+     */
+    public void recalculateAll(ForkJoinPool pool) {
+        if (sheet.isLazy()) {
+            recalculateAll();
+            return;
+        }
+        List<Address> blocked = new ArrayList<>();
+        for (List<Address> level : topologicalLevels(blocked)) {
+            Address[] cells = level.toArray(new Address[0]);
+            pool.invoke(new LevelTask(cells, 0, cells.length));
+        }
+        if (!blocked.isEmpty()) sheet.getDependencyGraph().findCycles(blocked);
+    }
+
+    /** Cells computed by parallel workers (see {@link EvalContext#getCacheMisses}) since the last reset. */
+    public long getWorkerCacheMisses() {
+        return workerMisses.sum();
+    }
+
+    /** Cell reads of parallel workers answered from cached values since the last reset. */
+    public long getWorkerCacheHits() {
+        return workerHits.sum();
+    }
+
+    /** Range cells read by parallel workers since the last reset. */
+    public long getWorkerRangeCellsScanned() {
+        return workerRangeCells.sum();
+    }
+
+    public void resetWorkerStats() {
+        workerMisses.reset();
+        workerHits.reset();
+        workerRangeCells.reset();
+    }
+
+    /** Stale formula cells grouped by level (Kahn's algorithm over the dependency graph). */
+    List<List<Address>> topologicalLevels() {
+        return topologicalLevels(new ArrayList<>());
+    }
+
+    // same; the stale cells no level can hold (on or behind a cycle) are added to 'blocked'
+    private List<List<Address>> topologicalLevels(List<Address> blocked) {
+        List<Address> stale = new ArrayList<>();
+        for (Address a : sheet.getUsedAddresses()) {
+            if (isStaleFormula(a)) stale.add(a);
+        }
+
+        DependencyGraph graph = sheet.getDependencyGraph();
+        Map<Address, Integer> inDegree = new HashMap<>();
+        for (Address a : stale) inDegree.putIfAbsent(a, 0);
+        for (Address a : stale) {
+            for (Address d : graph.getDependents(a)) {
+                if (inDegree.containsKey(d)) inDegree.merge(d, 1, Integer::sum);
+            }
+        }
+
+        List<List<Address>> levels = new ArrayList<>();
+        List<Address> current = new ArrayList<>();
+        for (Address a : stale) {
+            if (inDegree.get(a) == 0) current.add(a);
+        }
+
+        while (!current.isEmpty()) {
+            levels.add(current);
+            List<Address> next = new ArrayList<>();
+            for (Address a : current) {
+                for (Address d : graph.getDependents(a)) {
+                    Integer deg = inDegree.get(d);
+                    if (deg == null) continue;
+                    if (deg == 1) next.add(d);
+                    inDegree.put(d, deg - 1);
+                }
+            }
+            current = next;
+        }
+        for (Address a : stale) {
+            if (inDegree.get(a) > 0) blocked.add(a);
+        }
+        return levels;
+    }
+
+    private boolean isStaleFormula(Address a) {
+        CellBlock block = sheet.getBlock(a.getColumn(), a.getRow());
+        if (block == null) return false;
+        int i = CellBlock.index(a.getColumn(), a.getRow());
+        return block.kind(i) == CellBlock.FORMULA && !block.hasValue(i);
+    }
+
+    private static void evaluate(EvalContext ctx, Address addr) {
+        try {
+            ctx.getCellValue(addr);
+        } catch (RuntimeException ex) {
+            // leave the cell invalid; the error shows up on read
+        }
+    }
+
+    /** Evaluates a slice of one level; each leaf uses its own EvalContext. */
+    private final class LevelTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Address[] cells;
+        private final int from;
+        private final int to;
+
+        LevelTask(Address[] cells, int from, int to) {
+            this.cells = cells;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= LEAF_SIZE) {
+                EvalContext local = new EvalContext(sheet, false);
+                for (int i = from; i < to; i++) evaluate(local, cells[i]);
+                workerMisses.add(local.getCacheMisses());
+                workerHits.add(local.getCacheHits());
+                workerRangeCells.add(local.getRangeCellsScanned());
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new LevelTask(cells, from, mid), new LevelTask(cells, mid, to));
+        }
+    }
+}
@@ -2,24 +2,51 @@ package project.spreadsheet.content;
 
 import project.spreadsheet.formula.Expr;
 import project.spreadsheet.formula.EvalContext;
-import project.spreadsheet.parser.Parser;
+import project.spreadsheet.formula.FormulaTemplate;
+import project.spreadsheet.parser.R1C1Notation;
+import project.spreadsheet.parser.TemplateTable;
 
+/**
+ * Formula of one cell: a shared {@link FormulaTemplate} plus the cell it is written in.
+ * The raw text is rebuilt from the template's R1C1 form, so it comes back normalized
+ * (no spaces, upper-case names).
+ */
 public class FormulaContent implements Content {
 
-    private final String raw;
-    private final Expr ast;
+    private final FormulaTemplate template;
+    private final int column;
+    private final int row;
 
+    /** Stand-alone formula, not interned in any sheet; it is taken to be written in A1. */
     public FormulaContent(String raw) {
-        this.raw = raw;
-        this.ast = new Parser().parse(raw.substring(1)); // skip '='
+        this(new TemplateTable().intern(raw.substring(1), 1, 1), 1, 1); // skip '='
+    }
+
+    public FormulaContent(FormulaTemplate template, int column, int row) {
+        this.template = template;
+        this.column = column;
+        this.row = row;
     }
 
     @Override
     public String raw() {
-        return raw;
+        return "=" + R1C1Notation.toA1(template.getKey(), column, row);
+    }
+
+    public FormulaTemplate getTemplate() {
+        return template;
+    }
+
+    /** AST with absolute references (built on each call; evaluation uses the template). */
+    public Expr getAst() {
+        return template.bodyAt(column, row);
     }
 
     public double eval(EvalContext ctx) {
-        return ast.eval(ctx);
+        return ctx.evalAt(template, column, row);
+    }
+
+    public boolean isCompiled() {
+        return template.isCompiled();
     }
 }
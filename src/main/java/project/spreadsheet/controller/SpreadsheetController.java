@@ -1,57 +1,407 @@
 package project.spreadsheet.controller;
 
+import project.spreadsheet.calc.Recalculator;
+import project.spreadsheet.io.EditJournal;
 import project.spreadsheet.formula.EvalContext;
 import project.spreadsheet.io.S2VReader;
 import project.spreadsheet.io.S2VWriter;
+import project.spreadsheet.io.SnapshotReader;
+import project.spreadsheet.io.SnapshotWriter;
+import project.spreadsheet.metrics.EvalMetrics;
+import project.spreadsheet.metrics.MetricsSnapshot;
+import project.spreadsheet.metrics.SlowLoadEvent;
+import project.spreadsheet.metrics.SlowRecalcEvent;
 import project.spreadsheet.sheet.Address;
 import project.spreadsheet.sheet.Range;
+import project.spreadsheet.sheet.SheetVersion;
 import project.spreadsheet.sheet.Spreadsheet;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
-public class SpreadsheetController {
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Use cases on one sheet: edits with recalculation, loading, saving, the edit journal,
+ * metrics and published versions. Single-writer: its journal and evaluation context are
+ * not synchronized, so every call must come from one thread at a time (published
+ * versions may be read from any thread). Concurrent writers edit the {@link Spreadsheet}
+ * directly, without journal, recalculation or publishing.
+ */
+public class SpreadsheetController implements Closeable {
+
+    // edits per journal write + fsync
+    private static final int JOURNAL_BATCH = 256;
+
+    // most expensive cells kept while metrics are on
+    private static final int TOP_CELLS = 20;
 
     private final Spreadsheet sheet;
     private final S2VReader reader;
     private final S2VWriter writer;
+    private final EvalContext ctx;
+    private final Recalculator recalculator;
+
+    // pool for full recalculations; null -> serial
+    private ForkJoinPool recalcPool;
+
+    // file the sheet was last loaded from / saved to, and the journal of edits since then
+    private Path baseFile;
+    private EditJournal journal;
+    private long compactAt = 16L << 20;
+    // edit count of the sheet (Spreadsheet#getEditCount) as long as it is the base file plus
+    // the journal; any other count means someone edited the sheet around the journal
+    private long journaledEdits;
+
+    // timings; null while metrics are off
+    private EvalMetrics metrics;
+
+    // publish a SheetVersion after every edit, load and recalculation
+    private boolean publishing;
 
     public SpreadsheetController(Spreadsheet sheet, S2VReader reader, S2VWriter writer) {
         this.sheet = sheet;
         this.reader = reader;
         this.writer = writer;
+        this.ctx = new EvalContext(sheet);
+        this.recalculator = new Recalculator(sheet, ctx);
     }
 
     // --- use cases ---
 
-    /** Store raw content in a cell (text, number, or formula starting with '=') */
+    /** Store raw content in a cell (text, number, or formula starting with '=') and recalculate dependents. */
     public void setCellContent(String addressRef, String raw) {
-        sheet.setRawContent(Address.parse(addressRef), raw);
+        long start = startTimer();
+        Address addr = Address.parse(addressRef);
+        List<Address> dirty = sheet.setRawContent(addr, raw);
+
+        SlowRecalcEvent event = new SlowRecalcEvent();
+        long evaluated = ctx.getCacheMisses();
+        event.begin();
+        recalculator.recalculate(dirty);
+        event.end();
+        if (event.shouldCommit()) {
+            event.operation = "edit " + addr;
+            event.dirtyCells = dirty.size();
+            event.cellsEvaluated = ctx.getCacheMisses() - evaluated;
+            event.commit();
+        }
+        if (publishing) sheet.publish();
+        stopTimer("setCellContent", start);
+
+        if (journal != null) {
+            try {
+                journal.append(addr, raw);
+                journaledEdits++;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Store several cells at once (address -> raw content, applied in iteration order) and
+     * recalculate everything they affect once. Nothing is stored if any content fails to
+     * parse, and no value is read before the whole batch is in.
+     */
+    public void setCellContents(Map<String, String> contents) {
+        long start = startTimer();
+        Map<Address, String> edits = new LinkedHashMap<>();
+        for (Map.Entry<String, String> e : contents.entrySet()) edits.put(Address.parse(e.getKey()), e.getValue());
+        List<Address> dirty = sheet.setRawContents(edits);
+
+        SlowRecalcEvent event = new SlowRecalcEvent();
+        long evaluated = ctx.getCacheMisses();
+        event.begin();
+        recalculator.recalculate(dirty);
+        event.end();
+        if (event.shouldCommit()) {
+            event.operation = "batch of " + edits.size();
+            event.dirtyCells = dirty.size();
+            event.cellsEvaluated = ctx.getCacheMisses() - evaluated;
+            event.commit();
+        }
+        if (publishing) sheet.publish();
+        stopTimer("setCellContents", start);
+
+        if (journal != null) {
+            try {
+                for (Map.Entry<Address, String> e : edits.entrySet()) journal.append(e.getKey(), e.getValue());
+                journaledEdits++;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
     }
 
-    /** Get raw content exactly as stored (not evaluated). */
+    /**
+     * Raw content of a cell (not evaluated). Formulas are rebuilt from their shared
+     * template, so they come back normalized: {@code =a1 + 2} is returned as {@code =A1+2}.
+     */
     public String getCellContent(String addressRef) {
         return sheet.getRawContent(Address.parse(addressRef));
     }
 
 
     public double getCellValue(String addressRef) {
-        EvalContext ctx = new EvalContext(sheet);
-        return ctx.getCellValue(Address.parse(addressRef));
+        long start = startTimer();
+        try {
+            return ctx.getCellValue(Address.parse(addressRef));
+        } finally {
+            stopTimer("getCellValue", start);
+        }
+    }
+
+    /**
+     * Cells on a reference cycle, column by column. Edits flag the cycles they create
+     * and unflag the ones they break; cycles loaded from a file are flagged when they
+     * are evaluated (every load recalculates, serially or on the recalculation pool).
+     */
+    public List<String> getCyclicCells() {
+        List<Address> cells = new ArrayList<>(sheet.getDependencyGraph().getCyclicCells());
+        cells.sort(Comparator.comparingInt(Address::getColumn).thenComparingInt(Address::getRow));
+        List<String> out = new ArrayList<>(cells.size());
+        for (Address a : cells) out.add(a.toString());
+        return out;
+    }
+
+    public boolean isCyclic(String addressRef) {
+        return sheet.getDependencyGraph().isCyclic(Address.parse(addressRef));
+    }
+
+    /** Cell reads answered from cached values since the last reset (parallel recalculations included). */
+    public long getCacheHits() {
+        return ctx.getCacheHits() + recalculator.getWorkerCacheHits();
+    }
+
+    /** Cell reads that had to be computed since the last reset (parallel recalculations included). */
+    public long getCacheMisses() {
+        return ctx.getCacheMisses() + recalculator.getWorkerCacheMisses();
+    }
+
+    public void resetCacheStats() {
+        ctx.resetCacheStats();
+        recalculator.resetWorkerStats();
+    }
+
+    /**
+     * Switch timing on or off. While on, every entry point of this controller and every
+     * formula evaluation (self time) is timed, and the most expensive cells are tracked;
+     * switching on starts from empty timings. Counters are always kept.
+     * Slow edits, recalculations and loads are also reported as Flight Recorder events
+     * ({@link SlowRecalcEvent}, {@link SlowLoadEvent}) whenever a recording enables them.
+     */
+    public void setMetricsEnabled(boolean enabled) {
+        metrics = enabled ? new EvalMetrics(TOP_CELLS) : null;
+        ctx.setMetrics(metrics);
+    }
+
+    /** Current counters, plus timings and the most expensive cells if metrics are on. */
+    public MetricsSnapshot getMetrics() {
+        return new MetricsSnapshot(getCacheMisses(), sheet.getFormulasParsed(),
+                ctx.getRangeCellsScanned() + recalculator.getWorkerRangeCellsScanned(), getCacheHits(), metrics);
+    }
+
+    private long startTimer() {
+        return metrics == null ? 0 : System.nanoTime();
     }
 
-    /** Load spreadsheet from file (S2V). */
+    private void stopTimer(String entry, long start) {
+        if (metrics != null) metrics.time(entry, System.nanoTime() - start);
+    }
+
+    /**
+     * Switch version publishing on or off. While on, a new {@link SheetVersion} of the
+     * sheet is published (starting right away) after every edit, load and recalculation,
+     * once its values are computed; reader threads take it from {@link #getVersion} and
+     * read it without locking while this controller goes on editing.
+     */
+    public void setPublishVersions(boolean enabled) {
+        if (enabled && !publishing) sheet.publish();
+        publishing = enabled;
+    }
+
+    /** The last published version of the sheet; may be called from any thread. */
+    public SheetVersion getVersion() {
+        return sheet.currentVersion();
+    }
+
+    /** Run full recalculations (e.g. after load) in parallel on {@code pool}; null switches back to serial. */
+    public void setRecalculationPool(ForkJoinPool pool) {
+        this.recalcPool = pool;
+    }
+
+    /**
+     * Load spreadsheet from file: a binary snapshot (opens with its saved values) or,
+     * for anything else, S2V text. Edits journaled since the file was last written are
+     * replayed on top (unless the file was rewritten by something else since), and later
+     * edits are journaled for {@link #save}. Loading itself writes nothing. Loading into a
+     * sheet that already has cells merges the file into them; nothing is journaled then,
+     * and the next save writes the whole sheet.
+     */
     public void load(Path file) throws IOException {
-        Spreadsheet loaded = reader.read(file);
-        loaded.getUsedAddresses().forEach(addr ->
-                sheet.setRawContent(addr, loaded.getRawContent(addr)));
+        long start = startTimer();
+        SlowLoadEvent event = new SlowLoadEvent();
+        long parsed = sheet.getFormulasParsed();
+        event.begin();
+
+        boolean merging = !sheet.getUsedAddresses().isEmpty();
+        if (SnapshotReader.isSnapshot(file)) {
+            new SnapshotReader().read(file, sheet);
+        } else {
+            reader.read(file, sheet);
+        }
+        Map<Address, String> replayed = new LinkedHashMap<>();
+        long valid = EditJournal.replay(file, (addr, raw) -> {
+            replayed.remove(addr);   // keep the order of the last edits
+            replayed.put(addr, raw);
+        });
+        if (!replayed.isEmpty()) sheet.setRawContents(replayed);
+        recalculateAll();
+        if (merging) {
+            // the sheet is not the file plus a journal: saving has to write all of it
+            close();
+        } else {
+            attachJournal(file, valid);
+        }
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.path = file.toString();
+            event.bytes = Files.size(file);
+            event.cells = sheet.getUsedAddresses().size();
+            event.formulasParsed = sheet.getFormulasParsed() - parsed;
+            event.commit();
+        }
+        stopTimer("load", start);
+    }
+
+    /**
+     * Open a large S2V file without loading it: rows are parsed on first access and at
+     * most about {@code cachedRows} unedited rows are kept (see {@link S2VReader#openLazily}).
+     * Nothing is recalculated up front and edits are not journaled.
+     */
+    public void openLazily(Path file, int cachedRows) throws IOException {
+        if (publishing) throw new IllegalStateException("Versions of a lazily loaded sheet cannot be published");
+        close();
+        reader.openLazily(file, sheet, cachedRows);
+    }
+
+    /** Recompute every stale cell, in parallel when a recalculation pool is set (and the sheet is not lazy). */
+    public void recalculateAll() {
+        long start = startTimer();
+        SlowRecalcEvent event = new SlowRecalcEvent();
+        long evaluated = getCacheMisses();
+        event.begin();
+        if (recalcPool != null) {
+            recalculator.recalculateAll(recalcPool);
+        } else {
+            recalculator.recalculateAll();
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.operation = recalcPool != null && !sheet.isLazy() ? "recalculate all (parallel)" : "recalculate all";
+            event.dirtyCells = 0;
+            event.cellsEvaluated = getCacheMisses() - evaluated;
+            event.commit();
+        }
+        if (publishing) sheet.publish();
+        stopTimer("recalculateAll", start);
     }
 
-    /** Save spreadsheet to file (S2V). */
+    /**
+     * Save spreadsheet to file (S2V). Saving again to the same file only appends the
+     * edits since the last save to its journal; the file itself is rewritten (and the
+     * journal emptied) once the journal grows past the compaction threshold, or when the
+     * sheet was edited other than through this controller.
+     */
     public void save(Path file) throws IOException {
+        long start = startTimer();
+        try {
+            saveText(file);
+        } finally {
+            stopTimer("save", start);
+        }
+    }
+
+    private void saveText(Path file) throws IOException {
+        // before the file is truncated: it may be the one a lazy sheet reads from
+        sheet.readAll();
+        if (journal != null && file.equals(baseFile) && journaledEdits == sheet.getEditCount()) {
+            journal.flush();
+            if (journal.size() >= compactAt) compact();
+            return;
+        }
         writer.write(sheet, file);
+        attachJournal(file, 0);
+        // whatever journal the file had belongs to its previous contents
+        journal.reset();
+    }
+
+    /**
+     * Save a binary snapshot (formulas and computed values included); see {@link #load}.
+     * The snapshot is written next to {@code file} and moved over it once complete, so a
+     * failed save leaves the file as it was.
+     */
+    public void saveSnapshot(Path file) throws IOException {
+        sheet.readAll();
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            new SnapshotWriter().write(sheet, tmp);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        Files.move(tmp, file, REPLACE_EXISTING, ATOMIC_MOVE);
+        attachJournal(file, 0);
+        journal.reset();
+    }
+
+    /** Journal size (bytes) at which {@link #save} rewrites the whole file. */
+    public void setJournalCompactionThreshold(long bytes) {
+        this.compactAt = bytes;
+    }
+
+    /** Rewrite the base file from the sheet (in its current format) and empty the journal. */
+    public void compact() throws IOException {
+        if (baseFile == null) return;
+        Path tmp = baseFile.resolveSibling(baseFile.getFileName() + ".tmp");
+        if (SnapshotReader.isSnapshot(baseFile)) {
+            new SnapshotWriter().write(sheet, tmp);
+        } else {
+            writer.write(sheet, tmp);
+        }
+        Files.move(tmp, baseFile, REPLACE_EXISTING, ATOMIC_MOVE);
+        journal.reset();
+    }
+
+    /** Flush pending journaled edits and close the journal. */
+    @Override
+    public void close() throws IOException {
+        if (journal != null) {
+            journal.close();
+            journal = null;
+            baseFile = null;
+        }
+    }
+
+    // start journaling edits against 'file'; 'validLength' bytes of an existing journal are kept.
+    // Nothing is written until the first edit.
+    private void attachJournal(Path file, long validLength) throws IOException {
+        close();
+        journal = new EditJournal(file, validLength, JOURNAL_BATCH);
+        baseFile = file;
+        journaledEdits = sheet.getEditCount();
     }
 
     /** Optional helper for showing raw content in a range (not evaluated). */
@@ -61,7 +411,7 @@ public class SpreadsheetController {
         for (int row = r.getStart().getRow(); row <= r.getEnd().getRow(); row++) {
             List<String> line = new ArrayList<>();
             for (int col = r.getStart().getColumn(); col <= r.getEnd().getColumn(); col++) {
-                line.add(sheet.getRawContent(new Address(col, row)));
+                line.add(sheet.getRawContent(col, row));
             }
             rows.add(line);
         }
@@ -71,7 +421,6 @@ public class SpreadsheetController {
 
     public void printRangeValues(String rangeSpec) {
         Range r = Range.parse(rangeSpec);
-        EvalContext ctx = new EvalContext(sheet);
 
         // Print column headers
         System.out.print("      ");
@@ -85,7 +434,7 @@ public class SpreadsheetController {
         for (int row = r.getStart().getRow(); row <= r.getEnd().getRow(); row++) {
             System.out.printf("%5d ", row);
             for (int col = r.getStart().getColumn(); col <= r.getEnd().getColumn(); col++) {
-                double v = ctx.getCellValue(new Address(col, row));
+                double v = ctx.getCellValue(col, row);
                 System.out.printf("%10.2f", v);
             }
             System.out.println();
@@ -0,0 +1,22 @@
+package project.spreadsheet.formula;
+
+/**
+ * Folds function arguments one value at a time (ranges are streamed cell by cell),
+ * so aggregates keep only primitive state instead of collecting the values.
+ */
+public interface Aggregator {
+
+    void accept(double value);
+
+    double result();
+
+    /** Whether {@link #acceptSummary} can be used instead of feeding single values. */
+    default boolean acceptsSummaries() {
+        return false;
+    }
+
+    /** Fold {@code count} values at once, given only their sum, minimum and maximum. */
+    default void acceptSummary(double sum, double min, double max, long count) {
+        throw new UnsupportedOperationException("Aggregator needs individual values");
+    }
+}
@@ -0,0 +1,142 @@
+package project.spreadsheet.formula;
+
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Aggregators for the built-in functions. Empty input gives 0 for all of them.
+ */
+public final class Aggregators {
+
+    private Aggregators() {}
+
+    public static final class Sum implements Aggregator {
+        private double sum;
+
+        @Override
+        public void accept(double value) {
+            sum += value;
+        }
+
+        @Override
+        public boolean acceptsSummaries() {
+            return true;
+        }
+
+        @Override
+        public void acceptSummary(double sum, double min, double max, long count) {
+            this.sum += sum;
+        }
+
+        @Override
+        public double result() {
+            return sum;
+        }
+    }
+
+    public static final class Average implements Aggregator {
+        private double sum;
+        private long count;
+
+        @Override
+        public void accept(double value) {
+            sum += value;
+            count++;
+        }
+
+        @Override
+        public boolean acceptsSummaries() {
+            return true;
+        }
+
+        @Override
+        public void acceptSummary(double sum, double min, double max, long count) {
+            this.sum += sum;
+            this.count += count;
+        }
+
+        @Override
+        public double result() {
+            return count == 0 ? 0.0 : sum / count;
+        }
+    }
+
+    public static final class Min implements Aggregator {
+        private double min;
+        private boolean any;
+
+        @Override
+        public void accept(double value) {
+            min = any ? Math.min(min, value) : value;
+            any = true;
+        }
+
+        @Override
+        public boolean acceptsSummaries() {
+            return true;
+        }
+
+        @Override
+        public void acceptSummary(double sum, double min, double max, long count) {
+            if (count == 0) return;
+            this.min = any ? Math.min(this.min, min) : min;
+            any = true;
+        }
+
+        @Override
+        public double result() {
+            return any ? min : 0.0;
+        }
+    }
+
+    public static final class Max implements Aggregator {
+        private double max;
+        private boolean any;
+
+        @Override
+        public void accept(double value) {
+            max = any ? Math.max(max, value) : value;
+            any = true;
+        }
+
+        @Override
+        public boolean acceptsSummaries() {
+            return true;
+        }
+
+        @Override
+        public void acceptSummary(double sum, double min, double max, long count) {
+            if (count == 0) return;
+            this.max = any ? Math.max(this.max, max) : max;
+            any = true;
+        }
+
+        @Override
+        public double result() {
+            return any ? max : 0.0;
+        }
+    }
+
+    /** Applies a unary function to the first value; the rest are ignored. */
+    public static final class First implements Aggregator {
+        private final DoubleUnaryOperator fn;
+        private double first;
+        private boolean any;
+
+        public First(DoubleUnaryOperator fn) {
+            this.fn = fn;
+        }
+
+        @Override
+        public void accept(double value) {
+            if (!any) {
+                first = value;
+                any = true;
+            }
+        }
+
+        @Override
+        public double result() {
+            return any ? fn.applyAsDouble(first) : 0.0;
+        }
+    }
+}
@@ -6,11 +6,16 @@ package project.spreadsheet.formula;
 public class BinaryOp implements Expr {
 
     private final String op;
+    private final char code;   // op resolved once, so eval does not switch on a String
     private final Expr left;
     private final Expr right;
 
     public BinaryOp(String op, Expr left, Expr right) {
+        if (op.length() != 1 || "+-*/".indexOf(op.charAt(0)) < 0) {
+            throw new IllegalArgumentException("Unsupported operator: " + op);
+        }
         this.op = op;
+        this.code = op.charAt(0);
         this.left = left;
         this.right = right;
     }
@@ -19,16 +24,22 @@ public class BinaryOp implements Expr {
     public double eval(EvalContext ctx) {
         double l = left.eval(ctx);
         double r = right.eval(ctx);
+        return apply(code, l, r);
+    }
 
+    public static double apply(char op, double l, double r) {
         return switch (op) {
-            case "+" -> l + r;
-            case "-" -> l - r;
-            case "*" -> l * r;
-            case "/" -> l / r;
-            default -> throw new IllegalArgumentException("Unsupported operator: " + op);
+            case '+' -> l + r;
+            case '-' -> l - r;
+            case '*' -> l * r;
+            default -> l / r;
         };
     }
 
+    public char getCode() {
+        return code;
+    }
+
     public String getOp() {
         return op;
     }
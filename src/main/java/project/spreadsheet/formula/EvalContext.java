@@ -1,126 +1,471 @@
 package project.spreadsheet.formula;
 
-import project.spreadsheet.parser.Parser;
+import project.spreadsheet.calc.ColumnAggregates;
+import project.spreadsheet.calc.RangeIndex;
+import project.spreadsheet.metrics.EvalMetrics;
 import project.spreadsheet.sheet.Address;
+import project.spreadsheet.sheet.CellBlock;
 import project.spreadsheet.sheet.Range;
 import project.spreadsheet.sheet.Spreadsheet;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Set;
 
 /**
- * Evaluation context: provides access to spreadsheet values, function evaluation,
+ * Evaluation context: provides access to spreadsheet values, range folding for functions,
  * and circular reference (cycle) detection.
  */
 public class EvalContext {
 
+    // nested formula evaluations before the rest of a chain is evaluated with an explicit stack
+    private static final int MAX_DEPTH = 128;
+
     private final Spreadsheet sheet;
-    private final Parser parser;
 
-    // cycle detection: addresses currently being evaluated
-    private final Set<Address> visiting = new HashSet<>();
+    // column aggregate indexes for large ranges; null when disabled
+    private final RangeIndex rangeIndex;
+
+    // nested formula evaluations; a cycle always ends up in evalDeep, which finds it
+    private int depth;
+
+    // work stack of evalDeep: cells, and whether their precedents were pushed already
+    private int[] stackColumn = new int[64];
+    private int[] stackRow = new int[64];
+    private boolean[] stackExpanded = new boolean[64];
+    private int stackSize;
+    private final Set<Address> expanding = new HashSet<>();
+
+    // cell whose formula is being evaluated; relative references are resolved against it
+    int originColumn;
+    int originRow;
+
+    // slots of shared subexpressions, one frame per active SharedScope
+    private double[] slotValues = new double[16];
+    private boolean[] slotSet = new boolean[16];
+    private int frameBase;
+    private int frameTop;
+
+    // memo statistics: reads answered from a cached cell value vs. computed
+    private long cacheHits;
+    private long cacheMisses;
+    private long rangeCellsScanned;
+
+    // timing of formula evaluations; null when metrics are off
+    private EvalMetrics metrics;
+    // time spent evaluating precedents of the formula being timed
+    private long childNanos;
 
     public EvalContext(Spreadsheet sheet) {
+        this(sheet, true);
+    }
+
+    /**
+     * @param useRangeIndex whether range aggregates may use the sheet's {@link RangeIndex}.
+     *                      Contexts running concurrently with others must pass false.
+     */
+    public EvalContext(Spreadsheet sheet, boolean useRangeIndex) {
         this.sheet = sheet;
-        this.parser = new Parser();
+        this.rangeIndex = useRangeIndex ? sheet.getRangeIndex() : null;
     }
 
     /**
      * Get numeric value of a cell. Rules:
      * - empty -> 0
-     * - number -> parsed
-     * - formula -> parsed & evaluated recursively
+     * - number -> stored value
+     * - formula -> cached AST evaluated recursively; past {@link #MAX_DEPTH} nested
+     *   evaluations, stale precedents are computed first from an explicit stack, so
+     *   dependency chains of any length are evaluated
      * - text -> 0  (to avoid errors as teacher suggested)
-     * - cycles -> throw error
+     * - cycles -> throw error (cells on a cycle are also flagged in the dependency graph)
+     * Formula values are cached in the cell block until an edit invalidates them.
      */
     public double getCellValue(Address addr) {
-        if (visiting.contains(addr)) {
-            throw new IllegalStateException("Circular reference detected at " + addr);
+        return getCellValue(addr.getColumn(), addr.getRow());
+    }
+
+    /** Same as {@link #getCellValue(Address)}, without allocating an Address on cached reads. */
+    public double getCellValue(int column, int row) {
+        CellBlock block = sheet.getBlock(column, row);
+        if (block == null) return 0.0;
+
+        int i = CellBlock.index(column, row);
+        if (block.kind(i) != CellBlock.FORMULA) {
+            // numbers are stored as-is; text and empty -> 0 by policy
+            return block.value(i);
+        }
+
+        if (block.hasValue(i)) {
+            cacheHits++;
+            return block.value(i);
         }
 
-        visiting.add(addr);
+        if (depth >= MAX_DEPTH) return evalDeep(column, row);
+        return compute(block, i, column, row);
+    }
+
+    private double compute(CellBlock block, int i, int column, int row) {
+        cacheMisses++;
+        // a lazy sheet keeps what this evaluation reads until it is done
+        if (depth++ == 0) sheet.holdBands();
         try {
-            String raw = sheet.getRawContent(addr);
+            double value = metrics == null
+                    ? evalAt(block.template(i), column, row)
+                    : evalTimed(column, row, block.template(i));
+            block.setValue(i, value);
+            return value;
+        } finally {
+            if (--depth == 0) sheet.releaseBands();
+        }
+    }
 
-            if (raw == null || raw.isBlank()) return 0.0;
+    /**
+     * Evaluate the stale formula (column, row) bottom-up: its stale precedents (through
+     * cell references and ranges) are pushed on a work stack and computed first, deepest
+     * first, so each formula finds its inputs cached and recursion stays shallow.
+     * A precedent that is still being expanded closes a cycle: it is flagged in the
+     * dependency graph and reported.
+     */
+    private double evalDeep(int column, int row) {
+        int base = stackSize;
+        push(column, row);
+        try {
+            while (stackSize > base) {
+                int top = stackSize - 1;
+                int c = stackColumn[top];
+                int r = stackRow[top];
+                CellBlock block = sheet.getBlock(c, r);
+                int i = CellBlock.index(c, r);
 
-            if (raw.startsWith("=")) {
-                Expr expr = parser.parse(raw.substring(1));
-                return expr.eval(this);
+                if (block.hasValue(i) && !stackExpanded[top]) {
+                    // pushed more than once, computed through another path meanwhile
+                    stackSize--;
+                    continue;
+                }
+                if (!stackExpanded[top]) {
+                    stackExpanded[top] = true;
+                    Address addr = new Address(c, r);
+                    if (!expanding.add(addr)) {
+                        sheet.getDependencyGraph().findCycles(addr);
+                        throw new IllegalStateException("Circular reference detected at " + addr);
+                    }
+                    pushStalePrecedents(c, r, block.template(i));
+                    continue;
+                }
+
+                stackSize--;
+                expanding.remove(new Address(c, r));
+                if (!block.hasValue(i)) compute(block, i, c, r);
+            }
+        } finally {
+            // an error unwinds the cells still waiting here
+            for (int k = stackSize - 1; k >= base; k--) {
+                if (stackExpanded[k]) expanding.remove(new Address(stackColumn[k], stackRow[k]));
             }
+            stackSize = base;
+        }
+        return sheet.getBlock(column, row).value(CellBlock.index(column, row));
+    }
 
-            if (raw.matches("-?\\d+(\\.\\d+)?")) {
-                return Double.parseDouble(raw);
+    private void pushStalePrecedents(int column, int row, FormulaTemplate formula) {
+        for (Expr ref : formula.references()) {
+            if (ref instanceof RelCellRef rc) {
+                pushIfStale(column + rc.getColumnOffset(), row + rc.getRowOffset());
+            } else if (ref instanceof CellRef cr) {
+                pushIfStale(cr.getAddress().getColumn(), cr.getAddress().getRow());
+            } else {
+                Range range = ref instanceof RelRangeExpr rr ? rr.at(column, row) : ((RangeExpr) ref).getRange();
+                pushStaleCells(range.getStart().getColumn(), range.getStart().getRow(),
+                        range.getEnd().getColumn(), range.getEnd().getRow());
             }
+        }
+    }
 
-            // text or unknown -> 0 by policy
-            return 0.0;
+    // stale formulas of a range, visited block by block
+    private void pushStaleCells(int c1, int r1, int c2, int r2) {
+        for (int br = CellBlock.blockRow(r1); br <= CellBlock.blockRow(r2); br++) {
+            int rowFrom = Math.max(r1, br * CellBlock.ROWS + 1);
+            int rowTo = Math.min(r2, (br + 1) * CellBlock.ROWS);
+            for (int bc = CellBlock.blockCol(c1); bc <= CellBlock.blockCol(c2); bc++) {
+                int colFrom = Math.max(c1, bc * CellBlock.COLS + 1);
+                int colTo = Math.min(c2, (bc + 1) * CellBlock.COLS);
+                CellBlock block = sheet.getBlock(colFrom, rowFrom);
+                if (block == null) continue;
+                for (int c = colFrom; c <= colTo; c++) {
+                    for (int r = rowFrom; r <= rowTo; r++) {
+                        int i = CellBlock.index(c, r);
+                        if (block.kind(i) == CellBlock.FORMULA && !block.hasValue(i)) push(c, r);
+                    }
+                }
+            }
+        }
+    }
 
+    private void pushIfStale(int column, int row) {
+        CellBlock block = sheet.getBlock(column, row);
+        if (block == null) return;
+        int i = CellBlock.index(column, row);
+        if (block.kind(i) == CellBlock.FORMULA && !block.hasValue(i)) push(column, row);
+    }
+
+    private void push(int column, int row) {
+        if (stackSize == stackColumn.length) {
+            int cap = stackSize * 2;
+            stackColumn = Arrays.copyOf(stackColumn, cap);
+            stackRow = Arrays.copyOf(stackRow, cap);
+            stackExpanded = Arrays.copyOf(stackExpanded, cap);
+        }
+        stackColumn[stackSize] = column;
+        stackRow[stackSize] = row;
+        stackExpanded[stackSize] = false;
+        stackSize++;
+    }
+
+    public long getCacheHits() {
+        return cacheHits;
+    }
+
+    public long getCacheMisses() {
+        return cacheMisses;
+    }
+
+    /** Cells read by range scans (cells answered from the range index not included). */
+    public long getRangeCellsScanned() {
+        return rangeCellsScanned;
+    }
+
+    public void resetCacheStats() {
+        cacheHits = 0;
+        cacheMisses = 0;
+        rangeCellsScanned = 0;
+    }
+
+    /** Record the self time of every formula evaluation in {@code metrics}; null switches it off. */
+    public void setMetrics(EvalMetrics metrics) {
+        this.metrics = metrics;
+        this.childNanos = 0;
+    }
+
+    // self time: the evaluations of precedents it triggers are recorded for those cells
+    private double evalTimed(int column, int row, FormulaTemplate formula) {
+        long outerChildren = childNanos;
+        childNanos = 0;
+        long start = System.nanoTime();
+        try {
+            return evalAt(formula, column, row);
+        } finally {
+            long total = System.nanoTime() - start;
+            metrics.recordCell(column, row, total - childNanos);
+            childNanos = outerChildren + total;
+        }
+    }
+
+    /** Evaluate {@code template} as the formula of cell (column, row); the result is not cached. */
+    public double evalAt(FormulaTemplate template, int column, int row) {
+        int savedColumn = originColumn;
+        int savedRow = originRow;
+        originColumn = column;
+        originRow = row;
+        try {
+            return template.eval(this);
         } finally {
-            visiting.remove(addr);
+            originColumn = savedColumn;
+            originRow = savedRow;
+        }
+    }
+
+    /** Open a frame of {@code slots} shared-value slots; returns the state to pass to exitScope. */
+    int enterScope(int slots) {
+        int saved = frameBase;
+        frameBase = frameTop;
+        frameTop += slots;
+        if (frameTop > slotValues.length) {
+            int cap = Math.max(frameTop, slotValues.length * 2);
+            slotValues = Arrays.copyOf(slotValues, cap);
+            slotSet = Arrays.copyOf(slotSet, cap);
         }
+        Arrays.fill(slotSet, frameBase, frameTop, false);
+        return saved;
+    }
+
+    void exitScope(int savedBase) {
+        frameTop = frameBase;
+        frameBase = savedBase;
+    }
+
+    /** Value of a shared subexpression in the current scope, computed on first use. */
+    double sharedValue(int slot, Expr expr) {
+        int i = frameBase + slot;
+        if (i >= frameTop) return expr.eval(this); // evaluated outside its scope
+        if (!slotSet[i]) {
+            slotValues[i] = expr.eval(this);
+            slotSet[i] = true;
+        }
+        return slotValues[i];
     }
 
     /**
-     * Apply functions (Step 8, Step 9).
-     * Supports: SUM, AVG/AVERAGE, MIN, MAX, SIN, COS.
-     * Ranges are allowed as arguments and are expanded into cell values.
+     * Feed every cell of {@code range} (empty cells as 0) into {@code agg}.
+     * An aggregator that accepts summaries gets the same summaries, column by column and top
+     * to bottom, whether the rows are scanned or come from the column aggregate index (large
+     * ranges over hot columns): the result does not depend on the index. Other aggregators
+     * get the cells row by row.
      */
-    public double apply(String name, List<Expr> args) {
-        String fn = name.toUpperCase();
-
-        // flatten arguments: if RangeExpr -> expand into many numbers
-        List<Double> values = new ArrayList<>();
-        for (Expr arg : args) {
-            if (arg instanceof RangeExpr re) {
-                values.addAll(expandRange(re.getRange()));
-            } else {
-                values.add(arg.eval(this));
-            }
+    public void foldRange(Range range, Aggregator agg) {
+        foldRange(range.getStart().getColumn(), range.getStart().getRow(),
+                range.getEnd().getColumn(), range.getEnd().getRow(), agg);
+    }
+
+    /** Same as {@link #foldRange(Range, Aggregator)} for the range (c1, r1):(c2, r2). */
+    public void foldRange(int c1, int r1, int c2, int r2, Aggregator agg) {
+        if (c1 > c2 || r1 > r2) return;
+
+        if (!agg.acceptsSummaries()) {
+            scan(c1, c2, r1, r2, agg);
+            return;
+        }
+        boolean indexed = rangeIndex != null && r2 - r1 + 1 >= RangeIndex.MIN_ROWS;
+        for (int col = c1; col <= c2; col++) {
+            ColumnAggregates idx = indexed ? rangeIndex.lookup(col, r2) : null;
+            summarize(col, r1, r2, idx, agg);
         }
+    }
 
-        return switch (fn) {
-            case "SUM" -> {
-                double sum = 0.0;
-                for (double v : values) sum += v;
-                yield sum;
+    /**
+     * Rows r1..r2 of one column: the partial chunks at both ends as one summary each, the
+     * whole chunks in between as one summary per node of {@link ColumnAggregates#span},
+     * taken from {@code idx} when there is one and added up from scanned chunks otherwise.
+     */
+    private void summarize(int col, int r1, int r2, ColumnAggregates idx, Aggregator agg) {
+        int firstFull = CellBlock.blockRow(r1 + CellBlock.ROWS - 1);
+        int lastFull = CellBlock.blockRow(r2 + 1) - 1;
+        if (firstFull > lastFull) {
+            for (int br = CellBlock.blockRow(r1); br <= CellBlock.blockRow(r2); br++) {
+                summarizeChunk(col, Math.max(r1, br * CellBlock.ROWS + 1), Math.min(r2, (br + 1) * CellBlock.ROWS), agg);
             }
-            case "AVG", "AVERAGE" -> {
-                if (values.isEmpty()) yield 0.0;
-                double sum = 0.0;
-                for (double v : values) sum += v;
-                yield sum / values.size();
+            return;
+        }
+
+        int fullStart = firstFull * CellBlock.ROWS + 1;
+        int fullEnd = (lastFull + 1) * CellBlock.ROWS;
+        if (r1 < fullStart) summarizeChunk(col, r1, fullStart - 1, agg);
+        if (idx != null) {
+            foldIndexed(idx, firstFull, lastFull, agg);
+        } else {
+            for (int k = firstFull; k <= lastFull; ) {
+                int size = ColumnAggregates.span(k, lastFull);
+                summarizeNode(col, k, size, agg);
+                k += size;
             }
-            case "MIN" -> {
-                if (values.isEmpty()) yield 0.0;
-                double m = values.get(0);
-                for (int i = 1; i < values.size(); i++) m = Math.min(m, values.get(i));
-                yield m;
+        }
+        if (r2 > fullEnd) summarizeChunk(col, fullEnd + 1, r2, agg);
+    }
+
+    /** Whole chunks from the index; chunks with uncomputed formulas are computed first. */
+    private void foldIndexed(ColumnAggregates idx, int firstFull, int lastFull, Aggregator agg) {
+        int col = idx.getColumn();
+        for (int k = idx.nextStale(firstFull); k >= 0 && k <= lastFull; k = idx.nextStale(k + 1)) {
+            if (idx.refresh(k, sheet)) continue;
+            for (int row = k * CellBlock.ROWS + 1; row <= (k + 1) * CellBlock.ROWS; row++) getCellValue(col, row);
+            if (!idx.refresh(k, sheet)) throw new IllegalStateException("Chunk " + k + " of column " + col + " has no values");
+        }
+        idx.query(firstFull, lastFull, agg);
+    }
+
+    /** Chunks [first, first + size) as one summary: chunk sums added pairwise, as the index adds its nodes. */
+    private void summarizeNode(int col, int first, int size, Aggregator agg) {
+        double[] s = new double[size];
+        double[] mn = new double[size];
+        double[] mx = new double[size];
+        for (int k = 0; k < size; k++) {
+            int from = (first + k) * CellBlock.ROWS + 1;
+            summarizeChunk(col, from, from + CellBlock.ROWS - 1, s, mn, mx, k);
+        }
+        for (int step = 1; step < size; step *= 2) {
+            for (int k = 0; k + step < size; k += 2 * step) {
+                s[k] = s[k] + s[k + step];
+                mn[k] = Math.min(mn[k], mn[k + step]);
+                mx[k] = Math.max(mx[k], mx[k + step]);
             }
-            case "MAX" -> {
-                if (values.isEmpty()) yield 0.0;
-                double m = values.get(0);
-                for (int i = 1; i < values.size(); i++) m = Math.max(m, values.get(i));
-                yield m;
+        }
+        agg.acceptSummary(s[0], mn[0], mx[0], (long) size * CellBlock.ROWS);
+    }
+
+    private void summarizeChunk(int col, int from, int to, Aggregator agg) {
+        double[] s = new double[1];
+        double[] mn = new double[1];
+        double[] mx = new double[1];
+        summarizeChunk(col, from, to, s, mn, mx, 0);
+        agg.acceptSummary(s[0], mn[0], mx[0], to - from + 1);
+    }
+
+    /** Rows from..to of one chunk summed top to bottom from 0, like {@link ColumnAggregates#refresh}; stored at slot {@code at}. */
+    private void summarizeChunk(int col, int from, int to, double[] sums, double[] mins, double[] maxs, int at) {
+        rangeCellsScanned += to - from + 1;
+        CellBlock block = sheet.getBlock(col, from);
+        if (block == null) {
+            sums[at] = 0.0;
+            mins[at] = 0.0;
+            maxs[at] = 0.0;
+            return;
+        }
+
+        double s = 0.0;
+        double mn = Double.POSITIVE_INFINITY;
+        double mx = Double.NEGATIVE_INFINITY;
+        for (int row = from; row <= to; row++) {
+            int i = CellBlock.index(col, row);
+            double v;
+            if (block.kind(i) != CellBlock.FORMULA) {
+                v = block.value(i);
+            } else if (block.hasValue(i)) {
+                cacheHits++;
+                v = block.value(i);
+            } else {
+                v = getCellValue(col, row);
             }
-            case "SIN" -> values.isEmpty() ? 0.0 : Math.sin(values.get(0));
-            case "COS" -> values.isEmpty() ? 0.0 : Math.cos(values.get(0));
-            default -> throw new IllegalArgumentException("Unknown function: " + name);
-        };
+            s += v;
+            mn = Math.min(mn, v);
+            mx = Math.max(mx, v);
+        }
+        sums[at] = s;
+        mins[at] = mn;
+        maxs[at] = mx;
     }
 
-    private List<Double> expandRange(Range range) {
-        List<Double> out = new ArrayList<>();
-        Address s = range.getStart();
-        Address e = range.getEnd();
+    /** Row-major scan that walks one band of blocks at a time; nothing is allocated per cell. */
+    private void scan(int c1, int c2, int r1, int r2, Aggregator agg) {
+        int bc1 = CellBlock.blockCol(c1);
+        CellBlock[] band = new CellBlock[CellBlock.blockCol(c2) - bc1 + 1];
+
+        for (int br = CellBlock.blockRow(r1); br <= CellBlock.blockRow(r2); br++) {
+            int bandFirst = br * CellBlock.ROWS + 1;
+            for (int k = 0; k < band.length; k++) {
+                int col = (bc1 + k) * CellBlock.COLS + 1;
+                band[k] = sheet.getBlock(col, bandFirst);
+            }
 
-        for (int row = s.getRow(); row <= e.getRow(); row++) {
-            for (int col = s.getColumn(); col <= e.getColumn(); col++) {
-                out.add(getCellValue(new Address(col, row)));
+            int from = Math.max(r1, bandFirst);
+            int to = Math.min(r2, bandFirst + CellBlock.ROWS - 1);
+            rangeCellsScanned += (long) (to - from + 1) * (c2 - c1 + 1);
+            for (int row = from; row <= to; row++) {
+                for (int col = c1; col <= c2; col++) {
+                    CellBlock block = band[CellBlock.blockCol(col) - bc1];
+                    if (block == null) {
+                        agg.accept(0.0);
+                        continue;
+                    }
+                    int i = CellBlock.index(col, row);
+                    if (block.kind(i) != CellBlock.FORMULA) {
+                        agg.accept(block.value(i));
+                    } else if (block.hasValue(i)) {
+                        cacheHits++;
+                        agg.accept(block.value(i));
+                    } else {
+                        agg.accept(getCellValue(col, row));
+                    }
+                }
             }
         }
-        return out;
     }
 }
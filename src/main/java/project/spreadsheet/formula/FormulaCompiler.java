@@ -0,0 +1,91 @@
+package project.spreadsheet.formula;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Second execution tier for hot formulas. The interpreted AST is turned into a tree of
+ * specialized closures: operators are resolved at compile time, constant operands are
+ * captured as primitives and cell references read the cell blocks by (column, row).
+ * Formulas evaluated fewer than {@link #getThreshold()} times stay interpreted.
+ */
+public final class FormulaCompiler {
+
+    // evaluations before a formula is compiled; -Dspreadsheet.compileThreshold=0 disables
+    private static volatile int threshold = Integer.getInteger("spreadsheet.compileThreshold", 64);
+
+    private FormulaCompiler() {}
+
+    public static int getThreshold() {
+        return threshold;
+    }
+
+    /** Set the number of evaluations after which a formula is compiled (0 or less disables compiling). */
+    public static void setThreshold(int evaluations) {
+        threshold = evaluations;
+    }
+
+    /** Compile {@code e} into an equivalent Expr without per-node dispatch on node type or operator. */
+    public static Expr compile(Expr e) {
+        if (e instanceof NumberLit n) {
+            double v = n.getValue();
+            return ctx -> v;
+        }
+        if (e instanceof CellRef ref) {
+            int col = ref.getAddress().getColumn();
+            int row = ref.getAddress().getRow();
+            return ctx -> ctx.getCellValue(col, row);
+        }
+        if (e instanceof RelCellRef ref) {
+            int dCol = ref.getColumnOffset();
+            int dRow = ref.getRowOffset();
+            return ctx -> ctx.getCellValue(ctx.originColumn + dCol, ctx.originRow + dRow);
+        }
+        if (e instanceof BinaryOp op) {
+            return compileBinary(op);
+        }
+        if (e instanceof FuncCall fc) {
+            List<Expr> args = new ArrayList<>();
+            for (Expr arg : fc.getArgs()) args.add(compile(arg));
+            return new FuncCall(fc.getFunction(), args);
+        }
+        if (e instanceof SharedExpr se) {
+            return new SharedExpr(se.getSlot(), compile(se.getExpr()));
+        }
+        if (e instanceof SharedScope sc) {
+            return new SharedScope(sc.getSlots(), compile(sc.getBody()));
+        }
+        // ranges keep their own node
+        return e;
+    }
+
+    private static Expr compileBinary(BinaryOp op) {
+        Expr l = compile(op.getLeft());
+        Expr r = compile(op.getRight());
+
+        if (op.getRight() instanceof NumberLit lit) {
+            double k = lit.getValue();
+            return switch (op.getCode()) {
+                case '+' -> ctx -> l.eval(ctx) + k;
+                case '-' -> ctx -> l.eval(ctx) - k;
+                case '*' -> ctx -> l.eval(ctx) * k;
+                default -> ctx -> l.eval(ctx) / k;
+            };
+        }
+        if (op.getLeft() instanceof NumberLit lit) {
+            double k = lit.getValue();
+            return switch (op.getCode()) {
+                case '+' -> ctx -> k + r.eval(ctx);
+                case '-' -> ctx -> k - r.eval(ctx);
+                case '*' -> ctx -> k * r.eval(ctx);
+                default -> ctx -> k / r.eval(ctx);
+            };
+        }
+        return switch (op.getCode()) {
+            case '+' -> ctx -> l.eval(ctx) + r.eval(ctx);
+            case '-' -> ctx -> l.eval(ctx) - r.eval(ctx);
+            case '*' -> ctx -> l.eval(ctx) * r.eval(ctx);
+            default -> ctx -> l.eval(ctx) / r.eval(ctx);
+        };
+    }
+}
@@ -0,0 +1,95 @@
+package project.spreadsheet.formula;
+
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.Supplier;
+
+/**
+ * A function callable from formulas. Instances are looked up in a {@link FunctionRegistry}
+ * when the formula is parsed and bound into the {@link FuncCall} node, so evaluation is a
+ * direct call. Subclass it for custom functions, or use the factory methods.
+ */
+public abstract class FormulaFunction {
+
+    /** How range arguments (A1:B3) are handled. */
+    public enum ArgMode {
+        /** every cell of a range is streamed into the function as one more value */
+        STREAMED,
+        /** only single values; ranges are rejected at parse time */
+        SCALAR
+    }
+
+    public static final int VARIADIC = Integer.MAX_VALUE;
+
+    private final String name;
+    private final int minArgs;
+    private final int maxArgs;
+    private final ArgMode argMode;
+    private final boolean pure;
+
+    protected FormulaFunction(String name, int minArgs, int maxArgs, ArgMode argMode, boolean pure) {
+        this.name = name.toUpperCase();
+        this.minArgs = minArgs;
+        this.maxArgs = maxArgs;
+        this.argMode = argMode;
+        this.pure = pure;
+    }
+
+    public String getName() { return name; }
+    public int getMinArgs() { return minArgs; }
+    public int getMaxArgs() { return maxArgs; }
+    public ArgMode getArgMode() { return argMode; }
+
+    /** Pure functions of constant arguments may be folded by the optimizer. */
+    public boolean isPure() { return pure; }
+
+    /** Evaluate with already arity-checked arguments. */
+    public abstract double invoke(EvalContext ctx, Expr[] args);
+
+    // ---------------- Factories ----------------
+
+    /** Variadic function folding all values (ranges streamed) into a fresh aggregator. */
+    public static FormulaFunction aggregate(String name, Supplier<Aggregator> aggregator) {
+        return new FormulaFunction(name, 0, VARIADIC, ArgMode.STREAMED, true) {
+            @Override
+            public double invoke(EvalContext ctx, Expr[] args) {
+                Aggregator agg = aggregator.get();
+                for (Expr arg : args) {
+                    if (arg instanceof RangeExpr re) {
+                        ctx.foldRange(re.getRange(), agg);
+                    } else if (arg instanceof RelRangeExpr rr) {
+                        rr.fold(ctx, agg);
+                    } else {
+                        agg.accept(arg.eval(ctx));
+                    }
+                }
+                return agg.result();
+            }
+        };
+    }
+
+    /** Function of exactly one value. */
+    public static FormulaFunction unary(String name, DoubleUnaryOperator fn) {
+        return new FormulaFunction(name, 1, 1, ArgMode.SCALAR, true) {
+            @Override
+            public double invoke(EvalContext ctx, Expr[] args) {
+                return fn.applyAsDouble(args[0].eval(ctx));
+            }
+        };
+    }
+
+    /** Function of exactly two values. */
+    public static FormulaFunction binary(String name, DoubleBinaryOperator fn) {
+        return new FormulaFunction(name, 2, 2, ArgMode.SCALAR, true) {
+            @Override
+            public double invoke(EvalContext ctx, Expr[] args) {
+                return fn.applyAsDouble(args[0].eval(ctx), args[1].eval(ctx));
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
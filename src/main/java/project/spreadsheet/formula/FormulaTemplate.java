@@ -0,0 +1,126 @@
+package project.spreadsheet.formula;
+
+import project.spreadsheet.sheet.Address;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+/**
+ * Position-independent body of a formula: references are stored as offsets from the
+ * cell holding the formula ({@link RelCellRef}, {@link RelRangeExpr}), so every cell of
+ * a filled-down column (=B1*C1, =B2*C2, ...) shares one template, keyed by its R1C1 text.
+ * Evaluated with {@link EvalContext#evalAt}; the compiled tier is shared as well.
+ */
+public final class FormulaTemplate {
+
+    private final String key;
+    private final Expr body;
+
+    // tiered execution: interpreted until hot, then compiled (races here are benign)
+    private Expr compiled;
+    private int evaluations;
+
+    // reference nodes of the body, collected on first use
+    private Expr[] references;
+
+    public FormulaTemplate(String key, Expr body) {
+        this.key = key;
+        this.body = body;
+    }
+
+    /** Template of an absolute AST parsed for the cell (column, row). */
+    public static FormulaTemplate of(String key, Expr ast, int column, int row) {
+        return new FormulaTemplate(key, map(ast, e -> {
+            if (e instanceof CellRef ref) {
+                Address a = ref.getAddress();
+                return new RelCellRef(a.getColumn() - column, a.getRow() - row);
+            }
+            if (e instanceof RangeExpr re) {
+                Address s = re.getRange().getStart();
+                Address t = re.getRange().getEnd();
+                return new RelRangeExpr(s.getColumn() - column, s.getRow() - row,
+                        t.getColumn() - column, t.getRow() - row);
+            }
+            return e;
+        }, new IdentityHashMap<>()));
+    }
+
+    /** Canonical R1C1 text of the formula (without '='). */
+    public String getKey() {
+        return key;
+    }
+
+    /** Relative AST, shared by all cells using this template. */
+    public Expr getBody() {
+        return body;
+    }
+
+    /** AST with absolute references, as seen from the cell (column, row). */
+    public Expr bodyAt(int column, int row) {
+        return map(body, e -> {
+            if (e instanceof RelCellRef ref) return new CellRef(ref.at(column, row));
+            if (e instanceof RelRangeExpr re) return new RangeExpr(re.at(column, row));
+            return e;
+        }, new IdentityHashMap<>());
+    }
+
+    /** Evaluate at the current origin of {@code ctx}. */
+    double eval(EvalContext ctx) {
+        Expr c = compiled;
+        if (c != null) return c.eval(ctx);
+
+        int hot = FormulaCompiler.getThreshold();
+        if (hot > 0 && ++evaluations >= hot) {
+            c = FormulaCompiler.compile(body);
+            compiled = c;
+            return c.eval(ctx);
+        }
+        return body.eval(ctx);
+    }
+
+    public boolean isCompiled() {
+        return compiled != null;
+    }
+
+    /** Cell and range reference nodes of the body (relative or absolute). */
+    Expr[] references() {
+        Expr[] refs = references;
+        if (refs == null) {
+            List<Expr> out = new ArrayList<>();
+            map(body, e -> {
+                if (e instanceof CellRef || e instanceof RelCellRef
+                        || e instanceof RangeExpr || e instanceof RelRangeExpr) out.add(e);
+                return e;
+            }, new IdentityHashMap<>());
+            refs = out.toArray(new Expr[0]);
+            references = refs;
+        }
+        return refs;
+    }
+
+    // rebuilds composite nodes around mapped leaves; shared subtrees stay shared
+    private static Expr map(Expr e, UnaryOperator<Expr> leaf, Map<Expr, Expr> done) {
+        Expr seen = done.get(e);
+        if (seen != null) return seen;
+
+        Expr out;
+        if (e instanceof BinaryOp op) {
+            out = new BinaryOp(op.getOp(), map(op.getLeft(), leaf, done), map(op.getRight(), leaf, done));
+        } else if (e instanceof FuncCall fc) {
+            List<Expr> args = new ArrayList<>();
+            for (Expr arg : fc.getArgs()) args.add(map(arg, leaf, done));
+            out = new FuncCall(fc.getFunction(), args);
+        } else if (e instanceof SharedExpr se) {
+            out = new SharedExpr(se.getSlot(), map(se.getExpr(), leaf, done));
+        } else if (e instanceof SharedScope sc) {
+            out = new SharedScope(sc.getSlots(), map(sc.getBody(), leaf, done));
+        } else {
+            out = leaf.apply(e);
+        }
+        done.put(e, out);
+        return out;
+    }
+}
@@ -4,24 +4,46 @@ import java.util.List;
 
 /**
  * Composite node: function call like SIN(3).
+ * The function is resolved when the node is built; eval is a direct call.
  */
 public class FuncCall implements Expr {
 
-    private final String name;
+    private final FormulaFunction function;
     private final List<Expr> args;
+    private final Expr[] argArray;
 
     public FuncCall(String name, List<Expr> args) {
-        this.name = name;
-        this.args = args;
+        this(FunctionRegistry.standard().resolve(name), args);
+    }
+
+    public FuncCall(FormulaFunction function, List<Expr> args) {
+        int n = args.size();
+        if (n < function.getMinArgs() || n > function.getMaxArgs()) {
+            throw new IllegalArgumentException(function.getName() + " does not take " + n + " argument(s)");
+        }
+        if (function.getArgMode() == FormulaFunction.ArgMode.SCALAR) {
+            for (Expr arg : args) {
+                if (arg instanceof RangeExpr || arg instanceof RelRangeExpr) {
+                    throw new IllegalArgumentException(function.getName() + " does not accept ranges");
+                }
+            }
+        }
+        this.function = function;
+        this.args = List.copyOf(args);
+        this.argArray = args.toArray(new Expr[0]);
     }
 
     @Override
     public double eval(EvalContext ctx) {
-        return ctx.apply(name, args);
+        return function.invoke(ctx, argArray);
     }
 
     public String getName() {
-        return name;
+        return function.getName();
+    }
+
+    public FormulaFunction getFunction() {
+        return function;
     }
 
     public List<Expr> getArgs() {
@@ -0,0 +1,49 @@
+package project.spreadsheet.formula;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Functions known to the parser, by (upper-case) name.
+ * {@link #standard()} is the shared registry used by default; functions registered
+ * there are available to every formula parsed afterwards.
+ */
+public class FunctionRegistry {
+
+    private static final FunctionRegistry STANDARD = new FunctionRegistry().registerBuiltins();
+
+    private final Map<String, FormulaFunction> functions = new ConcurrentHashMap<>();
+
+    /** Shared registry with the built-in functions (SUM, AVG/AVERAGE, MIN, MAX, SIN, COS). */
+    public static FunctionRegistry standard() {
+        return STANDARD;
+    }
+
+    /** Add the built-in functions to this registry. */
+    public FunctionRegistry registerBuiltins() {
+        register(FormulaFunction.aggregate("SUM", Aggregators.Sum::new));
+        register(FormulaFunction.aggregate("AVG", Aggregators.Average::new));
+        register(FormulaFunction.aggregate("AVERAGE", Aggregators.Average::new));
+        register(FormulaFunction.aggregate("MIN", Aggregators.Min::new));
+        register(FormulaFunction.aggregate("MAX", Aggregators.Max::new));
+        register(FormulaFunction.unary("SIN", Math::sin));
+        register(FormulaFunction.unary("COS", Math::cos));
+        return this;
+    }
+
+    /** Add or replace a function. */
+    public void register(FormulaFunction fn) {
+        functions.put(fn.getName(), fn);
+    }
+
+    public boolean contains(String name) {
+        return functions.containsKey(name.toUpperCase());
+    }
+
+    /** Function called {@code name}; unknown names are an IllegalArgumentException. */
+    public FormulaFunction resolve(String name) {
+        FormulaFunction fn = functions.get(name.toUpperCase());
+        if (fn == null) throw new IllegalArgumentException("Unknown function: " + name);
+        return fn;
+    }
+}
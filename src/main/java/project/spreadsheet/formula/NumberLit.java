@@ -7,6 +7,10 @@ public class NumberLit implements Expr {
         this.value = value;
     }
 
+    public double getValue() {
+        return value;
+    }
+
     @Override
     public double eval(EvalContext ctx) {
         return value;
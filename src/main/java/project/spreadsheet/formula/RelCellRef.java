@@ -0,0 +1,36 @@
+package project.spreadsheet.formula;
+
+import project.spreadsheet.sheet.Address;
+
+/**
+ * Leaf node of a {@link FormulaTemplate}: reference to the cell at a fixed offset
+ * from the cell being evaluated (R[dRow]C[dCol]).
+ */
+public class RelCellRef implements Expr {
+
+    private final int dCol;
+    private final int dRow;
+
+    public RelCellRef(int dCol, int dRow) {
+        this.dCol = dCol;
+        this.dRow = dRow;
+    }
+
+    public int getColumnOffset() {
+        return dCol;
+    }
+
+    public int getRowOffset() {
+        return dRow;
+    }
+
+    /** Absolute address when evaluated in the cell (column, row). */
+    public Address at(int column, int row) {
+        return new Address(column + dCol, row + dRow);
+    }
+
+    @Override
+    public double eval(EvalContext ctx) {
+        return ctx.getCellValue(ctx.originColumn + dCol, ctx.originRow + dRow);
+    }
+}
@@ -0,0 +1,45 @@
+package project.spreadsheet.formula;
+
+import project.spreadsheet.sheet.Address;
+import project.spreadsheet.sheet.Range;
+
+/**
+ * Leaf node of a {@link FormulaTemplate}: a range whose corners are offsets from the
+ * cell being evaluated. Like {@link RangeExpr}, only meaningful as a function argument.
+ */
+public class RelRangeExpr implements Expr {
+
+    private final int dCol1;
+    private final int dRow1;
+    private final int dCol2;
+    private final int dRow2;
+
+    public RelRangeExpr(int dCol1, int dRow1, int dCol2, int dRow2) {
+        this.dCol1 = dCol1;
+        this.dRow1 = dRow1;
+        this.dCol2 = dCol2;
+        this.dRow2 = dRow2;
+    }
+
+    public int getStartColumnOffset() { return dCol1; }
+    public int getStartRowOffset() { return dRow1; }
+    public int getEndColumnOffset() { return dCol2; }
+    public int getEndRowOffset() { return dRow2; }
+
+    /** Absolute range when evaluated in the cell (column, row). */
+    public Range at(int column, int row) {
+        return new Range(new Address(column + dCol1, row + dRow1), new Address(column + dCol2, row + dRow2));
+    }
+
+    /** Feed the cells of the range, seen from the current origin, into {@code agg}. */
+    void fold(EvalContext ctx, Aggregator agg) {
+        int col = ctx.originColumn;
+        int row = ctx.originRow;
+        ctx.foldRange(col + dCol1, row + dRow1, col + dCol2, row + dRow2, agg);
+    }
+
+    @Override
+    public double eval(EvalContext ctx) {
+        throw new UnsupportedOperationException("Range cannot be evaluated to a single number directly. Use it inside functions.");
+    }
+}
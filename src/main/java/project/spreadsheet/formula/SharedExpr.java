@@ -0,0 +1,30 @@
+package project.spreadsheet.formula;
+
+/**
+ * Common subexpression: a subtree that occurs several times in one formula.
+ * It is evaluated once per evaluation of the enclosing {@link SharedScope};
+ * later occurrences read the value from the scope's slot.
+ */
+public class SharedExpr implements Expr {
+
+    private final int slot;
+    private final Expr expr;
+
+    public SharedExpr(int slot, Expr expr) {
+        this.slot = slot;
+        this.expr = expr;
+    }
+
+    public int getSlot() {
+        return slot;
+    }
+
+    public Expr getExpr() {
+        return expr;
+    }
+
+    @Override
+    public double eval(EvalContext ctx) {
+        return ctx.sharedValue(slot, expr);
+    }
+}
@@ -0,0 +1,34 @@
+package project.spreadsheet.formula;
+
+/**
+ * Root of a formula that contains {@link SharedExpr} nodes: reserves their slots
+ * in the EvalContext for the duration of one evaluation.
+ */
+public class SharedScope implements Expr {
+
+    private final int slots;
+    private final Expr body;
+
+    public SharedScope(int slots, Expr body) {
+        this.slots = slots;
+        this.body = body;
+    }
+
+    public int getSlots() {
+        return slots;
+    }
+
+    public Expr getBody() {
+        return body;
+    }
+
+    @Override
+    public double eval(EvalContext ctx) {
+        int saved = ctx.enterScope(slots);
+        try {
+            return body.eval(ctx);
+        } finally {
+            ctx.exitScope(saved);
+        }
+    }
+}
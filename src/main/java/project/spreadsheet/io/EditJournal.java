@@ -0,0 +1,191 @@
+package project.spreadsheet.io;
+
+import project.spreadsheet.sheet.Address;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of cell edits kept next to a saved sheet ("sheet.s2v.journal").
+ * Edits are buffered and written + fsynced in batches, so a crash loses at most the
+ * current batch. The file starts with a header naming the base file it belongs to (its
+ * size and modification time when the journal was started); a journal whose base was
+ * rewritten since is stale and is not replayed. Record layout: int length, then
+ * (int column, int row, UTF-8 raw), then the CRC32 of those bytes; a torn or corrupt
+ * tail ends the replay. The file is only created once there is an edit to write.
+ */
+public class EditJournal implements Closeable {
+
+    private static final int MAGIC = 0x53324A31;   // "S2J1"
+    // magic, base size, base modification time (ms)
+    private static final int HEADER = 4 + 8 + 8;
+
+    private final Path base;
+    private final Path file;
+    private final int batchSize;
+    // intact bytes of the existing journal to keep; 0 -> start a new one
+    private long validLength;
+    // identity of the base file a new journal is started for
+    private long baseSize;
+    private long baseModified;
+    // opened by the first write
+    private FileChannel channel;
+
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private final DataOutputStream pendingOut = new DataOutputStream(pending);
+    private int pendingEdits;
+
+    /** Journal file used for {@code base}. */
+    public static Path pathFor(Path base) {
+        return base.resolveSibling(base.getFileName() + ".journal");
+    }
+
+    /**
+     * Journal of edits to {@code base}. The first {@code validLength} bytes of an existing
+     * journal (as returned by {@link #replay}) are kept and appended to; anything else in
+     * it is discarded when the first edit is written. Nothing is touched on disk before.
+     */
+    public EditJournal(Path base, long validLength, int batchSize) throws IOException {
+        this.base = base;
+        this.file = pathFor(base);
+        this.validLength = validLength;
+        this.batchSize = batchSize;
+        identifyBase();
+    }
+
+    /** Buffer one edit; a full batch is written and synced. */
+    public void append(Address addr, String raw) throws IOException {
+        byte[] text = (raw == null ? "" : raw).getBytes(StandardCharsets.UTF_8);
+        CRC32 crc = new CRC32();
+        ByteBuffer body = ByteBuffer.allocate(8 + text.length);
+        body.putInt(addr.getColumn()).putInt(addr.getRow()).put(text);
+        crc.update(body.array());
+
+        pendingOut.writeInt(body.capacity());
+        pendingOut.write(body.array());
+        pendingOut.writeInt((int) crc.getValue());
+        if (++pendingEdits >= batchSize) flush();
+    }
+
+    /** Write and fsync the buffered edits. */
+    public void flush() throws IOException {
+        if (pendingEdits == 0) return;
+        if (channel == null) open();
+        ByteBuffer buf = ByteBuffer.wrap(pending.toByteArray());
+        while (buf.hasRemaining()) channel.write(buf);
+        channel.force(false);
+        pending.reset();
+        pendingEdits = 0;
+    }
+
+    /** Bytes in the journal, including buffered edits. */
+    public long size() throws IOException {
+        return (channel != null ? channel.size() : validLength) + pending.size();
+    }
+
+    /** Drop all edits (after they were compacted into the base file, which is now the base). */
+    public void reset() throws IOException {
+        pending.reset();
+        pendingEdits = 0;
+        validLength = 0;
+        identifyBase();
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+        Files.deleteIfExists(file);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            if (channel != null) channel.close();
+        }
+    }
+
+    private void identifyBase() throws IOException {
+        baseSize = Files.size(base);
+        baseModified = Files.getLastModifiedTime(base).toMillis();
+    }
+
+    // open for appending after the kept prefix, or start over with a header for the current base
+    private void open() throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        if (validLength < HEADER) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER);
+            header.putInt(MAGIC).putLong(baseSize).putLong(baseModified);
+            header.flip();
+            channel.truncate(0);
+            while (header.hasRemaining()) channel.write(header, header.position());
+            validLength = HEADER;
+        } else if (channel.size() > validLength) {
+            channel.truncate(validLength);
+        }
+        channel.force(true);
+        channel.position(validLength);
+    }
+
+    /**
+     * Feed every complete record of the journal of {@code base} to {@code edit}, in order.
+     *
+     * @return length of the intact prefix, to pass to the constructor; 0 if there is no
+     *         journal or it belongs to another version of the base file
+     */
+    public static long replay(Path base, BiConsumer<Address, String> edit) throws IOException {
+        Path file = pathFor(base);
+        if (!Files.exists(file)) return 0;
+        long fileSize = Files.size(file);
+        long valid = HEADER;
+        try (InputStream raw = Files.newInputStream(file);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(raw, 1 << 16))) {
+            try {
+                if (in.readInt() != MAGIC
+                        || in.readLong() != Files.size(base)
+                        || in.readLong() != Files.getLastModifiedTime(base).toMillis()) {
+                    return 0;
+                }
+            } catch (EOFException torn) {
+                return 0;
+            }
+            while (true) {
+                byte[] body;
+                int stored;
+                try {
+                    int length = in.readInt();
+                    if (length < 8 || length > fileSize - valid - 8) break;
+                    body = new byte[length];
+                    in.readFully(body);
+                    stored = in.readInt();
+                } catch (EOFException torn) {
+                    break;
+                }
+                CRC32 crc = new CRC32();
+                crc.update(body);
+                if ((int) crc.getValue() != stored) break;
+
+                ByteBuffer b = ByteBuffer.wrap(body);
+                int column = b.getInt();
+                int row = b.getInt();
+                edit.accept(new Address(column, row), new String(body, 8, body.length - 8, StandardCharsets.UTF_8));
+                valid += 4 + body.length + 4;
+            }
+        }
+        return valid;
+    }
+}
@@ -0,0 +1,103 @@
+package project.spreadsheet.io;
+
+import project.spreadsheet.sheet.CellBlock;
+import project.spreadsheet.sheet.RowSource;
+import project.spreadsheet.sheet.SheetFragment;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * S2V file read one band of rows at a time. The offset of every band's first line is
+ * found by a single forward scan for newlines, which only goes as far as the bands asked
+ * for so far; a band is then read with one positioned read and parsed on its own.
+ * The file must not change while the source is in use.
+ */
+final class IndexedS2VSource implements RowSource {
+
+    // bytes scanned per read while looking for line starts
+    private static final int SCAN_BUFFER = 1 << 20;
+
+    private final Path file;
+    private final long fileSize;
+
+    // offsets[b] = file offset of the first line of band b, for b < known
+    private long[] offsets = new long[64];
+    private int known;
+    private long scanned;     // the scan has looked at every byte before this offset
+    private long lines;       // lines starting before 'scanned'
+
+    IndexedS2VSource(Path file) throws IOException {
+        this.file = file;
+        this.fileSize = Files.size(file);
+        if (fileSize > 0) {
+            offsets[known++] = 0;
+            lines = 1;
+        }
+    }
+
+    @Override
+    public synchronized SheetFragment readBand(int band) {
+        SheetFragment fragment = new SheetFragment();
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            scanUntil(ch, band + 1);
+            if (band >= known) return fragment;
+
+            long from = offsets[band];
+            long to = band + 1 < known ? offsets[band + 1] : fileSize;
+            if (to - from > Integer.MAX_VALUE) {
+                throw new IOException("Band of rows too large at row " + (band * CellBlock.ROWS + 1));
+            }
+            ByteBuffer buf = ByteBuffer.allocate((int) (to - from));
+            while (buf.hasRemaining()) {
+                if (ch.read(buf, from + buf.position()) < 0) throw new IOException("File shrank while reading: " + file);
+            }
+            buf.flip();
+
+            S2VLineParser parser = new S2VLineParser(buf, fragment);
+            int row = band * CellBlock.ROWS + 1;
+            for (int p = 0; p < buf.limit(); ) p = parser.parseLine(p, row++);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return fragment;
+    }
+
+    @Override
+    public synchronized int bandCount() {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            scanUntil(ch, Integer.MAX_VALUE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return known;
+    }
+
+    // scan until the start of band 'band' is known or the file ends
+    private void scanUntil(FileChannel ch, int band) throws IOException {
+        if (known > band || scanned == fileSize) return;
+        ByteBuffer buf = ByteBuffer.allocate(SCAN_BUFFER);
+        byte[] bytes = buf.array();
+        while (known <= band && scanned < fileSize) {
+            buf.clear();
+            int n = ch.read(buf, scanned);
+            if (n < 0) throw new IOException("File shrank while reading: " + file);
+            for (int i = 0; i < n; i++) {
+                if (bytes[i] != '\n') continue;
+                long next = scanned + i + 1;
+                if (next == fileSize) break;
+                if (lines++ % CellBlock.ROWS == 0) {
+                    if (known == offsets.length) offsets = Arrays.copyOf(offsets, known * 2);
+                    offsets[known++] = next;
+                }
+            }
+            scanned += n;
+        }
+    }
+}
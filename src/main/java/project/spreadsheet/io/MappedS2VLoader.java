@@ -0,0 +1,141 @@
+package project.spreadsheet.io;
+
+import project.spreadsheet.sheet.SheetFragment;
+import project.spreadsheet.sheet.Spreadsheet;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Parallel S2V loader. The file is memory-mapped and cut into fixed-size chunks; a chunk
+ * owns the lines that start inside it. Two passes run on the pool:
+ * 1. count the newlines of every chunk, which gives the first row of each chunk
+ * 2. parse every chunk into its own {@link SheetFragment}
+ * The fragments are then merged into the sheet in file order. Lines are parsed by
+ * {@link S2VLineParser}.
+ */
+final class MappedS2VLoader {
+
+    private final ForkJoinPool pool;
+    private final int chunkSize;
+
+    MappedS2VLoader(ForkJoinPool pool, int chunkSize) {
+        this.pool = pool;
+        this.chunkSize = chunkSize;
+    }
+
+    void load(Path file, Spreadsheet into) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = ch.size();
+            int n = (int) ((size + chunkSize - 1) / chunkSize);
+
+            Chunk[] chunks = new Chunk[n];
+            for (int i = 0; i < n; i++) {
+                long start = (long) i * chunkSize;
+                long end = Math.min(size, start + chunkSize);
+                // map from the byte before the chunk (to see whether a line starts here) up to
+                // as far as a single mapping goes, so the last line can run past the chunk end
+                long base = Math.max(0, start - 1);
+                long length = Math.min(size - base, Integer.MAX_VALUE);
+                MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, base, length);
+                chunks[i] = new Chunk(buf, (int) (start - base), (int) (end - base), start > 0);
+            }
+
+            pool.invoke(new Pass(chunks, 0, n, true));
+
+            long newlines = 0;
+            for (Chunk c : chunks) {
+                c.firstRow = newlines + 1;
+                newlines += c.newlines;
+            }
+
+            pool.invoke(new Pass(chunks, 0, n, false));
+
+            SheetFragment[] fragments = new SheetFragment[n];
+            for (int i = 0; i < n; i++) fragments[i] = chunks[i].fragment;
+            into.merge(fragments);
+        }
+    }
+
+    /** Runs one pass over a slice of the chunks, splitting until one chunk is left. */
+    private static final class Pass extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Chunk[] chunks;
+        private final int from;
+        private final int to;
+        private final boolean count;
+
+        Pass(Chunk[] chunks, int from, int to, boolean count) {
+            this.chunks = chunks;
+            this.from = from;
+            this.to = to;
+            this.count = count;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                if (count) chunks[from].countNewlines();
+                else chunks[from].parse();
+                return;
+            }
+            if (to - from < 1) return;
+            int mid = (from + to) >>> 1;
+            invokeAll(new Pass(chunks, from, mid, count), new Pass(chunks, mid, to, count));
+        }
+    }
+
+    private static final class Chunk {
+        private final MappedByteBuffer buf;
+        private final int start;          // positions relative to the mapping
+        private final int end;
+        private final boolean hasPrevious;
+
+        long newlines;
+        long firstRow;                    // row of the line running across 'start'
+        SheetFragment fragment;
+
+        Chunk(MappedByteBuffer buf, int start, int end, boolean hasPrevious) {
+            this.buf = buf;
+            this.start = start;
+            this.end = end;
+            this.hasPrevious = hasPrevious;
+        }
+
+        void countNewlines() {
+            long count = 0;
+            for (int p = start; p < end; p++) {
+                if (buf.get(p) == '\n') count++;
+            }
+            newlines = count;
+        }
+
+        void parse() {
+            fragment = new SheetFragment();
+            S2VLineParser parser = new S2VLineParser(buf, fragment);
+            int limit = buf.limit();
+            int p = start;
+            long row = firstRow;
+
+            // the line running into this chunk belongs to the previous one
+            if (hasPrevious && buf.get(p - 1) != '\n') {
+                while (p < limit && buf.get(p) != '\n') p++;
+                if (p >= limit) return;
+                p++;
+                row++;
+            }
+
+            // a line starting inside the chunk may run past its end
+            while (p < end) {
+                if (row > Integer.MAX_VALUE) throw new IllegalArgumentException("Too many rows");
+                p = parser.parseLine(p, (int) row++);
+            }
+        }
+    }
+}
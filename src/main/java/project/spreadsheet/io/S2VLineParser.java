@@ -0,0 +1,105 @@
+package project.spreadsheet.io;
+
+import project.spreadsheet.sheet.SheetFragment;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Parses S2V lines straight from bytes into a {@link SheetFragment}. Same cell rules as
+ * {@link S2VReader#read(java.io.Reader)}; lines end with "\n" or "\r\n".
+ * Not thread-safe: use one parser per buffer.
+ */
+final class S2VLineParser {
+
+    private static final double[] POW10 = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final ByteBuffer buf;
+    private final SheetFragment fragment;
+
+    private byte[] scratch = new byte[256];
+
+    S2VLineParser(ByteBuffer buf, SheetFragment fragment) {
+        this.buf = buf;
+        this.fragment = fragment;
+    }
+
+    /**
+     * Parse the line starting at {@code from} as row {@code row}.
+     *
+     * @return start of the next line, or the buffer limit after the last one
+     */
+    int parseLine(int from, int row) {
+        int limit = buf.limit();
+        int lineEnd = from;
+        while (lineEnd < limit && buf.get(lineEnd) != '\n') lineEnd++;
+        int to = lineEnd;
+        if (to > from && buf.get(to - 1) == '\r') to--;
+
+        int col = 1;
+        int cellStart = from;
+        for (int p = from; p <= to; p++) {
+            if (p == to || buf.get(p) == ';') {
+                if (p > cellStart) parseCell(cellStart, p, col, row);
+                col++;
+                cellStart = p + 1;
+            }
+        }
+        return lineEnd >= limit ? limit : lineEnd + 1;
+    }
+
+    private void parseCell(int from, int to, int col, int row) {
+        if (buf.get(from) == '=') {
+            // formulas use ',' in files and ';' in memory (see S2VWriter)
+            fragment.setFormula(col, row, decode(from + 1, to).replace(',', ';'));
+            return;
+        }
+        double v = parseSimpleNumber(from, to);
+        if (!Double.isNaN(v)) {
+            fragment.setNumber(col, row, v);
+        } else {
+            fragment.setRawContent(col, row, decode(from, to));
+        }
+    }
+
+    private String decode(int from, int to) {
+        int len = to - from;
+        if (len > scratch.length) scratch = new byte[Math.max(len, scratch.length * 2)];
+        buf.get(from, scratch, 0, len);
+        return new String(scratch, 0, len, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * [-]digits[.digits] with at most 15 digits, converted exactly like Double.parseDouble
+     * (both operands are exact doubles, so the division is correctly rounded).
+     * NaN for anything else, which then takes the general path.
+     */
+    private double parseSimpleNumber(int from, int to) {
+        int p = from;
+        boolean negative = buf.get(p) == '-';
+        if (negative) p++;
+
+        long mantissa = 0;
+        int digits = 0;
+        int fraction = -1;
+        for (; p < to; p++) {
+            byte b = buf.get(p);
+            if (b >= '0' && b <= '9') {
+                if (++digits > 15) return Double.NaN;
+                mantissa = mantissa * 10 + (b - '0');
+                if (fraction >= 0) fraction++;
+            } else if (b == '.' && fraction < 0) {
+                fraction = 0;
+            } else {
+                return Double.NaN;
+            }
+        }
+        if (digits == 0) return Double.NaN;
+
+        double v = fraction > 0 ? mantissa / POW10[fraction] : mantissa;
+        return negative ? -v : v;
+    }
+}
@@ -1,24 +1,63 @@
 package project.spreadsheet.io;
 
-import project.spreadsheet.sheet.Address;
+import project.spreadsheet.sheet.CellBlock;
+import project.spreadsheet.sheet.SheetFragment;
 import project.spreadsheet.sheet.Spreadsheet;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.Reader;
-import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
 
 public class S2VReader {
 
+    // bytes per parallel chunk when loading a file
+    private static final int CHUNK_SIZE = 16 << 20;
+
+    private final ForkJoinPool pool;
+    private final int chunkSize;
+
+    public S2VReader() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /** Files are parsed in parallel on {@code pool}. */
+    public S2VReader(ForkJoinPool pool) {
+        this(pool, CHUNK_SIZE);
+    }
+
+    S2VReader(ForkJoinPool pool, int chunkSize) {
+        this.pool = pool;
+        this.chunkSize = chunkSize;
+    }
+
     public Spreadsheet read(Path file) throws IOException {
-        try (BufferedReader br = Files.newBufferedReader(file)) {
-            return read(br);
-        }
+        Spreadsheet sheet = new Spreadsheet();
+        read(file, sheet);
+        return sheet;
+    }
+
+    /**
+     * Load {@code file} into {@code sheet}, replacing cells at the same addresses.
+     * The file is memory-mapped and parsed in parallel chunks; nothing is recalculated.
+     */
+    public void read(Path file, Spreadsheet sheet) throws IOException {
+        new MappedS2VLoader(pool, chunkSize).load(file, sheet);
+    }
+
+    /**
+     * Open {@code file} lazily in the empty {@code sheet}: rows are parsed when first read,
+     * and at most about {@code cachedRows} unedited rows stay in memory (see
+     * {@link Spreadsheet#attach}). The file must not change while the sheet uses it.
+     */
+    public void openLazily(Path file, Spreadsheet sheet, int cachedRows) throws IOException {
+        int bands = Math.max(1, cachedRows / CellBlock.ROWS);
+        sheet.attach(new IndexedS2VSource(file), bands);
     }
 
     public Spreadsheet read(Reader in) throws IOException {
-        Spreadsheet sheet = new Spreadsheet();
+        SheetFragment fragment = new SheetFragment();
         BufferedReader br = (in instanceof BufferedReader) ? (BufferedReader) in : new BufferedReader(in);
 
         String line;
@@ -32,10 +71,12 @@ public class S2VReader {
                 if (raw.startsWith("=")) {
                     raw = decodeFormulaFromFile(raw);
                 }
-                sheet.setRawContent(new Address(c + 1, row), raw);
+                fragment.setRawContent(c + 1, row, raw);
             }
             row++;
         }
+        Spreadsheet sheet = new Spreadsheet();
+        sheet.merge(fragment);
         return sheet;
     }
 
@@ -1,18 +1,26 @@
 package project.spreadsheet.io;
 
-import project.spreadsheet.sheet.Address;
+import project.spreadsheet.sheet.CellBlock;
 import project.spreadsheet.sheet.Spreadsheet;
 
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.io.Writer;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.ArrayList;
-import java.util.List;
 
+/**
+ * Writes the populated cells in row-major order straight into one reusable buffer:
+ * empty rows become empty lines, gaps within a row become ';' separators, and
+ * trailing empty cells are not written. Cost grows with the populated cells, not
+ * with the bounding rectangle.
+ */
 public class S2VWriter {
 
+    // buffered characters before they are handed to the Writer
+    private static final int FLUSH_AT = 1 << 16;
+
     public void write(Spreadsheet sheet, Path file) throws IOException {
         try (BufferedWriter bw = Files.newBufferedWriter(file)) {
             write(sheet, bw);
@@ -20,31 +28,65 @@ public class S2VWriter {
     }
 
     public void write(Spreadsheet sheet, Writer out) throws IOException {
-        int maxRow = 0, maxCol = 0;
-        for (Address addr : sheet.getUsedAddresses()) {
-            maxRow = Math.max(maxRow, addr.getRow());
-            maxCol = Math.max(maxCol, addr.getColumn());
+        Output o = new Output(out);
+        try {
+            sheet.forEachInRowOrder(o::cell);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        if (o.row > 0) o.sb.append(System.lineSeparator());
+        o.flush();
+    }
+
+    private static String encodeFormulaForFile(String raw) {
+        return "=" + raw.substring(1).replace(';', ',');
+    }
+
+    private static final class Output {
+        private final Writer out;
+        private final StringBuilder sb = new StringBuilder(FLUSH_AT + 1024);
+        private char[] chars = new char[0];
+
+        int row;      // row currently being written (0 before the first cell)
+        int column;   // column of the last cell written on that row
+
+        Output(Writer out) {
+            this.out = out;
         }
 
-        for (int r = 1; r <= maxRow; r++) {
-            List<String> row = new ArrayList<>();
-            for (int c = 1; c <= maxCol; c++) {
-                Address addr = new Address(c, r);
-                String raw = sheet.getRawContent(addr);
-                if (raw.startsWith("=")) {
-                    raw = encodeFormulaForFile(raw);
+        void cell(CellBlock block, int index) {
+            int r = block.rowOf(index);
+            int c = block.columnOf(index);
+
+            if (r != row) {
+                // end the current row, then one empty line per skipped row
+                for (int k = Math.max(row, 1); k < r; k++) sb.append(System.lineSeparator());
+                row = r;
+                column = 1;
+            }
+            for (; column < c; column++) sb.append(';');
+
+            switch (block.kind(index)) {
+                case CellBlock.NUMBER -> sb.append(block.value(index));
+                case CellBlock.FORMULA -> sb.append(encodeFormulaForFile(block.content(index).raw()));
+                default -> sb.append(block.content(index).raw());
+            }
+
+            if (sb.length() >= FLUSH_AT) {
+                try {
+                    flush();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
                 }
-                row.add(raw);
             }
-            int last = row.size() - 1;
-            while (last >= 0 && row.get(last).isEmpty()) last--;
-            String line = String.join(";", row.subList(0, last + 1));
-            out.write(line);
-            out.write(System.lineSeparator());
         }
-    }
 
-    private static String encodeFormulaForFile(String raw) {
-        return "=" + raw.substring(1).replace(';', ',');
+        void flush() throws IOException {
+            int n = sb.length();
+            if (chars.length < n) chars = new char[n];
+            sb.getChars(0, n, chars, 0);
+            out.write(chars, 0, n);
+            sb.setLength(0);
+        }
     }
 }
@@ -0,0 +1,133 @@
+package project.spreadsheet.io;
+
+import project.spreadsheet.formula.BinaryOp;
+import project.spreadsheet.formula.Expr;
+import project.spreadsheet.formula.FormulaTemplate;
+import project.spreadsheet.formula.FuncCall;
+import project.spreadsheet.formula.FunctionRegistry;
+import project.spreadsheet.formula.NumberLit;
+import project.spreadsheet.formula.RelCellRef;
+import project.spreadsheet.formula.RelRangeExpr;
+import project.spreadsheet.formula.SharedExpr;
+import project.spreadsheet.formula.SharedScope;
+import project.spreadsheet.sheet.CellBlock;
+import project.spreadsheet.sheet.SheetFragment;
+import project.spreadsheet.sheet.Spreadsheet;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads snapshots written by {@link SnapshotWriter}. Formulas come back with their
+ * templates and last computed values, so the sheet is usable without parsing or
+ * recalculating. Functions are looked up by name in the standard registry.
+ */
+public class SnapshotReader {
+
+    /** Whether {@code file} starts with the snapshot header (any version). */
+    public static boolean isSnapshot(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] head = in.readNBytes(4);
+            return head.length == 4
+                    && ((head[0] & 0xFF) << 24 | (head[1] & 0xFF) << 16 | (head[2] & 0xFF) << 8 | (head[3] & 0xFF))
+                    == SnapshotWriter.MAGIC;
+        }
+    }
+
+    public Spreadsheet read(Path file) throws IOException {
+        Spreadsheet sheet = new Spreadsheet();
+        read(file, sheet);
+        return sheet;
+    }
+
+    /** Load {@code file} into {@code sheet}, replacing cells at the same addresses. */
+    public void read(Path file, Spreadsheet sheet) throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file), 1 << 16)) {
+            read(in, sheet);
+        }
+    }
+
+    public void read(InputStream stream, Spreadsheet sheet) throws IOException {
+        DataInputStream in = new DataInputStream(stream);
+        if (in.readInt() != SnapshotWriter.MAGIC) throw new IOException("Not a spreadsheet snapshot");
+        int version = in.readInt();
+        if (version != SnapshotWriter.VERSION) throw new IOException("Unsupported snapshot version " + version);
+
+        int n = in.readInt();
+        List<FormulaTemplate> templates = new ArrayList<>(n);
+        for (int k = 0; k < n; k++) {
+            String key = readString(in);
+            templates.add(new FormulaTemplate(key, readExpr(in)));
+        }
+
+        SheetFragment cells = new SheetFragment();
+        int col;
+        while ((col = in.readInt()) != 0) {
+            int row = in.readInt();
+            byte kind = in.readByte();
+            switch (kind) {
+                case CellBlock.NUMBER -> cells.setNumber(col, row, in.readDouble());
+                case CellBlock.TEXT -> cells.setText(col, row, readString(in));
+                case CellBlock.FORMULA -> {
+                    FormulaTemplate t = templates.get(in.readInt());
+                    boolean valid = in.readBoolean();
+                    double value = in.readDouble();
+                    if (valid) cells.setFormula(col, row, t, value);
+                    else cells.setFormula(col, row, t);
+                }
+                default -> throw new IOException("Corrupt snapshot: cell kind " + kind);
+            }
+        }
+        sheet.merge(cells);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) throw new IOException("Corrupt snapshot: string length " + length);
+        byte[] bytes = in.readNBytes(length);
+        if (bytes.length != length) throw new EOFException();
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static Expr readExpr(DataInputStream in) throws IOException {
+        byte tag = in.readByte();
+        switch (tag) {
+            case SnapshotWriter.NUMBER:
+                return new NumberLit(in.readDouble());
+            case SnapshotWriter.CELL:
+                return new RelCellRef(in.readInt(), in.readInt());
+            case SnapshotWriter.RANGE:
+                return new RelRangeExpr(in.readInt(), in.readInt(), in.readInt(), in.readInt());
+            case SnapshotWriter.BINARY: {
+                String op = String.valueOf(in.readChar());
+                Expr left = readExpr(in);
+                return new BinaryOp(op, left, readExpr(in));
+            }
+            case SnapshotWriter.CALL: {
+                String name = readString(in);
+                int argc = in.readInt();
+                List<Expr> args = new ArrayList<>(argc);
+                for (int k = 0; k < argc; k++) args.add(readExpr(in));
+                return new FuncCall(FunctionRegistry.standard().resolve(name), args);
+            }
+            case SnapshotWriter.SHARED: {
+                int slot = in.readInt();
+                return new SharedExpr(slot, readExpr(in));
+            }
+            case SnapshotWriter.SCOPE: {
+                int slots = in.readInt();
+                return new SharedScope(slots, readExpr(in));
+            }
+            default:
+                throw new IOException("Corrupt snapshot: node tag " + tag);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package project.spreadsheet.io;
+
+import project.spreadsheet.content.TextContent;
+import project.spreadsheet.formula.BinaryOp;
+import project.spreadsheet.formula.Expr;
+import project.spreadsheet.formula.FormulaTemplate;
+import project.spreadsheet.formula.FuncCall;
+import project.spreadsheet.formula.NumberLit;
+import project.spreadsheet.formula.RelCellRef;
+import project.spreadsheet.formula.RelRangeExpr;
+import project.spreadsheet.formula.SharedExpr;
+import project.spreadsheet.formula.SharedScope;
+import project.spreadsheet.sheet.CellBlock;
+import project.spreadsheet.sheet.Spreadsheet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary snapshot of a sheet, read back by {@link SnapshotReader}. Layout (big-endian):
+ * <pre>
+ * int magic (0x89 "S2V"), int version
+ * int templateCount, then per template: string key, body (prefix-encoded AST)
+ * per cell, in row order: int column, int row, byte kind, then
+ *     NUMBER: double | TEXT: string | FORMULA: int template, boolean valid, double value
+ * int 0 (end of cells)
+ * </pre>
+ * Strings are an int byte length followed by UTF-8. Templates are stored as ASTs and
+ * cached values as doubles, so loading needs neither the parser nor a recalculation.
+ */
+public class SnapshotWriter {
+
+    // 0x89 "S2V": 0x89 cannot start UTF-8 text, so no S2V file is mistaken for a snapshot
+    static final int MAGIC = 0x89533256;
+    static final int VERSION = 2;
+
+    // AST node tags
+    static final byte NUMBER = 1;
+    static final byte CELL = 2;
+    static final byte RANGE = 3;
+    static final byte BINARY = 4;
+    static final byte CALL = 5;
+    static final byte SHARED = 6;
+    static final byte SCOPE = 7;
+
+    public void write(Spreadsheet sheet, Path file) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), 1 << 16)) {
+            write(sheet, out);
+        }
+    }
+
+    public void write(Spreadsheet sheet, OutputStream stream) throws IOException {
+        DataOutputStream out = new DataOutputStream(stream);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+
+        Map<FormulaTemplate, Integer> ids = new IdentityHashMap<>();
+        List<FormulaTemplate> templates = new ArrayList<>();
+        sheet.forEachInRowOrder((block, i) -> {
+            FormulaTemplate t = block.template(i);
+            if (t != null && ids.putIfAbsent(t, templates.size()) == null) templates.add(t);
+        });
+
+        out.writeInt(templates.size());
+        for (FormulaTemplate t : templates) {
+            writeString(out, t.getKey());
+            writeExpr(out, t.getBody());
+        }
+
+        try {
+            sheet.forEachInRowOrder((block, i) -> {
+                try {
+                    writeCell(out, block, i, ids);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        out.writeInt(0);
+        out.flush();
+    }
+
+    private static void writeCell(DataOutputStream out, CellBlock block, int i,
+                                  Map<FormulaTemplate, Integer> ids) throws IOException {
+        byte kind = block.kind(i);
+        out.writeInt(block.columnOf(i));
+        out.writeInt(block.rowOf(i));
+        out.writeByte(kind);
+        switch (kind) {
+            case CellBlock.NUMBER -> out.writeDouble(block.value(i));
+            case CellBlock.TEXT -> writeString(out, ((TextContent) block.content(i)).getText());
+            case CellBlock.FORMULA -> {
+                out.writeInt(ids.get(block.template(i)));
+                out.writeBoolean(block.hasValue(i));
+                out.writeDouble(block.value(i));
+            }
+            default -> throw new IllegalStateException("Unexpected cell kind " + kind);
+        }
+    }
+
+    // unlike writeUTF, not limited to 64K
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static void writeExpr(DataOutputStream out, Expr e) throws IOException {
+        if (e instanceof NumberLit n) {
+            out.writeByte(NUMBER);
+            out.writeDouble(n.getValue());
+        } else if (e instanceof RelCellRef ref) {
+            out.writeByte(CELL);
+            out.writeInt(ref.getColumnOffset());
+            out.writeInt(ref.getRowOffset());
+        } else if (e instanceof RelRangeExpr re) {
+            out.writeByte(RANGE);
+            out.writeInt(re.getStartColumnOffset());
+            out.writeInt(re.getStartRowOffset());
+            out.writeInt(re.getEndColumnOffset());
+            out.writeInt(re.getEndRowOffset());
+        } else if (e instanceof BinaryOp op) {
+            out.writeByte(BINARY);
+            out.writeChar(op.getCode());
+            writeExpr(out, op.getLeft());
+            writeExpr(out, op.getRight());
+        } else if (e instanceof FuncCall fc) {
+            out.writeByte(CALL);
+            writeString(out, fc.getName());
+            out.writeInt(fc.getArgs().size());
+            for (Expr arg : fc.getArgs()) writeExpr(out, arg);
+        } else if (e instanceof SharedExpr se) {
+            out.writeByte(SHARED);
+            out.writeInt(se.getSlot());
+            writeExpr(out, se.getExpr());
+        } else if (e instanceof SharedScope sc) {
+            out.writeByte(SCOPE);
+            out.writeInt(sc.getSlots());
+            writeExpr(out, sc.getBody());
+        } else {
+            throw new IllegalArgumentException("Cannot serialize " + e.getClass().getSimpleName());
+        }
+    }
+}
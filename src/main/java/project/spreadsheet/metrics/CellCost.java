@@ -0,0 +1,28 @@
+package project.spreadsheet.metrics;
+
+import project.spreadsheet.sheet.Address;
+
+/** Longest self time seen for one formula cell. */
+public final class CellCost {
+
+    private final Address address;
+    private final long nanos;
+
+    CellCost(Address address, long nanos) {
+        this.address = address;
+        this.nanos = nanos;
+    }
+
+    public Address getAddress() {
+        return address;
+    }
+
+    public long getNanos() {
+        return nanos;
+    }
+
+    @Override
+    public String toString() {
+        return address + "=" + nanos + "ns";
+    }
+}
@@ -0,0 +1,83 @@
+package project.spreadsheet.metrics;
+
+import project.spreadsheet.sheet.Address;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Timings collected while metrics are on: one histogram per entry point (plus
+ * {@link #CELL} for the self time of single formula evaluations) and the N most
+ * expensive cells. Counters are kept by the components themselves and added in
+ * {@link MetricsSnapshot}. Not thread-safe.
+ */
+public final class EvalMetrics {
+
+    /** Histogram of formula self times (precedent evaluations excluded). */
+    public static final String CELL = "cell";
+
+    private final Map<String, LatencyHistogram> timings = new LinkedHashMap<>();
+
+    // top cells by self time, unordered; topMin is the cheapest of a full table
+    private final int[] topColumn;
+    private final int[] topRow;
+    private final long[] topNanos;
+    private int topCount;
+    private long topMin;
+
+    public EvalMetrics(int topCells) {
+        topColumn = new int[topCells];
+        topRow = new int[topCells];
+        topNanos = new long[topCells];
+        timings.put(CELL, new LatencyHistogram());
+    }
+
+    /** Add one call of {@code entry} that took {@code nanos}. */
+    public void time(String entry, long nanos) {
+        timings.computeIfAbsent(entry, e -> new LatencyHistogram()).record(nanos);
+    }
+
+    /** Self time of one evaluation of the formula in (column, row). */
+    public void recordCell(int column, int row, long nanos) {
+        timings.get(CELL).record(nanos);
+        if (topNanos.length == 0 || (topCount == topNanos.length && nanos <= topMin)) return;
+
+        int slot = -1;
+        for (int k = 0; k < topCount; k++) {
+            if (topColumn[k] == column && topRow[k] == row) {
+                if (nanos <= topNanos[k]) return;
+                slot = k;
+                break;
+            }
+        }
+        if (slot < 0) slot = topCount < topNanos.length ? topCount++ : cheapest();
+        topColumn[slot] = column;
+        topRow[slot] = row;
+        topNanos[slot] = nanos;
+        if (topCount == topNanos.length) topMin = topNanos[cheapest()];
+    }
+
+    private int cheapest() {
+        int min = 0;
+        for (int k = 1; k < topCount; k++) {
+            if (topNanos[k] < topNanos[min]) min = k;
+        }
+        return min;
+    }
+
+    Map<String, LatencyHistogram> copyTimings() {
+        Map<String, LatencyHistogram> out = new LinkedHashMap<>();
+        timings.forEach((entry, h) -> out.put(entry, h.copy()));
+        return out;
+    }
+
+    /** Most expensive cells first. */
+    List<CellCost> expensiveCells() {
+        List<CellCost> out = new ArrayList<>(topCount);
+        for (int k = 0; k < topCount; k++) out.add(new CellCost(new Address(topColumn[k], topRow[k]), topNanos[k]));
+        out.sort((a, b) -> Long.compare(b.getNanos(), a.getNanos()));
+        return out;
+    }
+}
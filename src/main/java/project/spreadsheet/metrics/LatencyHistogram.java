@@ -0,0 +1,59 @@
+package project.spreadsheet.metrics;
+
+/**
+ * Durations in power-of-two buckets of nanoseconds: bucket k holds [2^(k-1), 2^k).
+ * Percentiles are reported as the upper bound of their bucket (at most 2x off).
+ * Not thread-safe.
+ */
+public final class LatencyHistogram {
+
+    private final long[] buckets = new long[64];
+    private long count;
+    private long totalNanos;
+    private long maxNanos;
+
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        buckets[64 - Long.numberOfLeadingZeros(nanos)]++;
+        count++;
+        totalNanos += nanos;
+        if (nanos > maxNanos) maxNanos = nanos;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    public double getMeanNanos() {
+        return count == 0 ? 0 : (double) totalNanos / count;
+    }
+
+    /** Upper bound of the bucket holding the {@code q} quantile (0 &lt; q &lt;= 1); 0 when empty. */
+    public long getPercentileNanos(double q) {
+        if (count == 0) return 0;
+        long rank = (long) Math.ceil(q * count);
+        long seen = 0;
+        for (int k = 0; k < buckets.length; k++) {
+            seen += buckets[k];
+            if (seen >= rank) return k == 0 ? 0 : Math.min(maxNanos, (1L << k) - 1);
+        }
+        return maxNanos;
+    }
+
+    LatencyHistogram copy() {
+        LatencyHistogram h = new LatencyHistogram();
+        System.arraycopy(buckets, 0, h.buckets, 0, buckets.length);
+        h.count = count;
+        h.totalNanos = totalNanos;
+        h.maxNanos = maxNanos;
+        return h;
+    }
+}
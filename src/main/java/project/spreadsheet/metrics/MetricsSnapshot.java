@@ -0,0 +1,81 @@
+package project.spreadsheet.metrics;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Point-in-time copy of the counters and timings; safe to keep and read from any thread. */
+public final class MetricsSnapshot {
+
+    private final long cellsEvaluated;
+    private final long formulasParsed;
+    private final long rangeCellsScanned;
+    private final long cacheHits;
+    private final Map<String, LatencyHistogram> timings;
+    private final List<CellCost> expensiveCells;
+
+    /** {@code metrics} may be null (metrics off): counters only. */
+    public MetricsSnapshot(long cellsEvaluated, long formulasParsed, long rangeCellsScanned, long cacheHits,
+                           EvalMetrics metrics) {
+        this.cellsEvaluated = cellsEvaluated;
+        this.formulasParsed = formulasParsed;
+        this.rangeCellsScanned = rangeCellsScanned;
+        this.cacheHits = cacheHits;
+        this.timings = metrics == null ? Map.of() : Collections.unmodifiableMap(metrics.copyTimings());
+        this.expensiveCells = metrics == null ? List.of() : List.copyOf(metrics.expensiveCells());
+    }
+
+    public long getCellsEvaluated() {
+        return cellsEvaluated;
+    }
+
+    public long getFormulasParsed() {
+        return formulasParsed;
+    }
+
+    public long getRangeCellsScanned() {
+        return rangeCellsScanned;
+    }
+
+    public long getCacheHits() {
+        return cacheHits;
+    }
+
+    /** Histograms by entry point; empty while metrics are off. */
+    public Map<String, LatencyHistogram> getTimings() {
+        return timings;
+    }
+
+    /** Formula cells with the longest self time, most expensive first. */
+    public List<CellCost> getExpensiveCells() {
+        return expensiveCells;
+    }
+
+    /**
+     * Flat name -> value view for scraping, e.g. "cells.evaluated" or
+     * "time.load.p99_ns" (count, total_ns, mean_ns, p50_ns, p99_ns, max_ns per entry point).
+     */
+    public Map<String, Number> toMap() {
+        Map<String, Number> out = new LinkedHashMap<>();
+        out.put("cells.evaluated", cellsEvaluated);
+        out.put("formulas.parsed", formulasParsed);
+        out.put("range.cells_scanned", rangeCellsScanned);
+        out.put("cache.hits", cacheHits);
+        timings.forEach((entry, h) -> {
+            String prefix = "time." + entry + ".";
+            out.put(prefix + "count", h.getCount());
+            out.put(prefix + "total_ns", h.getTotalNanos());
+            out.put(prefix + "mean_ns", h.getMeanNanos());
+            out.put(prefix + "p50_ns", h.getPercentileNanos(0.5));
+            out.put(prefix + "p99_ns", h.getPercentileNanos(0.99));
+            out.put(prefix + "max_ns", h.getMaxNanos());
+        });
+        return out;
+    }
+
+    @Override
+    public String toString() {
+        return toMap() + " top=" + expensiveCells;
+    }
+}
@@ -0,0 +1,33 @@
+package project.spreadsheet.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/** Flight Recorder event for a load above the threshold (100 ms unless configured). */
+@Name("project.spreadsheet.SlowLoad")
+@Label("Slow Load")
+@Category("Spreadsheet")
+@Description("Loading a file (including the journal replay and recalculation) that took longer than the threshold")
+@Threshold("100 ms")
+@StackTrace(false)
+public final class SlowLoadEvent extends Event {
+
+    @Label("File")
+    public String path;
+
+    @Label("File Size")
+    @DataAmount
+    public long bytes;
+
+    @Label("Cells")
+    public int cells;
+
+    @Label("Formulas Parsed")
+    public long formulasParsed;
+}
@@ -0,0 +1,30 @@
+package project.spreadsheet.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/** Flight Recorder event for a recalculation above the threshold (20 ms unless configured). */
+@Name("project.spreadsheet.SlowRecalc")
+@Label("Slow Recalculation")
+@Category("Spreadsheet")
+@Description("Edit or full recalculation that took longer than the threshold")
+@Threshold("20 ms")
+@StackTrace(false)
+public final class SlowRecalcEvent extends Event {
+
+    @Label("Operation")
+    public String operation;
+
+    @Label("Cells To Recalculate")
+    @Description("Cells invalidated by the edit; 0 for a full recalculation")
+    public int dirtyCells;
+
+    @Label("Formulas Evaluated")
+    @Description("Formulas evaluated by the controller's context (parallel workers not included)")
+    public long cellsEvaluated;
+}
@@ -0,0 +1,191 @@
+package project.spreadsheet.parser;
+
+import project.spreadsheet.formula.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Optimizer run after parsing:
+ * - constant folding: NumberLit op NumberLit, pure functions (SIN, COS, ...) of constants
+ * - identities: x*1, 1*x, x/1, x+0, 0+x, x-0 -> x
+ * - common subexpressions: identical subtrees within one formula are evaluated once
+ *   (wrapped in SharedExpr, with a SharedScope at the root)
+ * Every rewrite is recorded in {@link #getChanges()}.
+ */
+public class AstOptimizer {
+
+    private final List<String> changes = new ArrayList<>();
+
+    /** Human-readable list of rewrites done by the last {@link #optimize} call. */
+    public List<String> getChanges() {
+        return changes;
+    }
+
+    public Expr optimize(Expr ast) {
+        changes.clear();
+        Expr simplified = simplify(ast);
+        return shareCommonSubtrees(simplified);
+    }
+
+    // ---------------- Folding & identities ----------------
+
+    private Expr simplify(Expr e) {
+        if (e instanceof BinaryOp op) {
+            Expr l = simplify(op.getLeft());
+            Expr r = simplify(op.getRight());
+
+            if (l instanceof NumberLit a && r instanceof NumberLit b) {
+                Expr folded = new NumberLit(BinaryOp.apply(op.getCode(), a.getValue(), b.getValue()));
+                changes.add("fold " + key(new BinaryOp(op.getOp(), a, b)) + " -> " + key(folded));
+                return folded;
+            }
+
+            Expr identity = identity(op.getCode(), l, r);
+            if (identity != null) {
+                changes.add("identity " + key(new BinaryOp(op.getOp(), l, r)) + " -> " + key(identity));
+                return identity;
+            }
+
+            return (l == op.getLeft() && r == op.getRight()) ? op : new BinaryOp(op.getOp(), l, r);
+        }
+
+        if (e instanceof FuncCall fc) {
+            List<Expr> args = new ArrayList<>();
+            boolean changed = false;
+            for (Expr arg : fc.getArgs()) {
+                Expr s = simplify(arg);
+                changed |= s != arg;
+                args.add(s);
+            }
+
+            if (fc.getFunction().isPure() && args.stream().allMatch(a -> a instanceof NumberLit)) {
+                // constant arguments never touch the context
+                Expr folded = new NumberLit(fc.getFunction().invoke(null, args.toArray(new Expr[0])));
+                changes.add("fold " + key(new FuncCall(fc.getFunction(), args)) + " -> " + key(folded));
+                return folded;
+            }
+            return changed ? new FuncCall(fc.getFunction(), args) : fc;
+        }
+
+        return e;
+    }
+
+    private static Expr identity(char op, Expr l, Expr r) {
+        return switch (op) {
+            case '*' -> isConst(r, 1) ? l : isConst(l, 1) ? r : null;
+            case '/' -> isConst(r, 1) ? l : null;
+            case '+' -> isConst(r, 0) ? l : isConst(l, 0) ? r : null;
+            case '-' -> isConst(r, 0) ? l : null;
+            default -> null;
+        };
+    }
+
+    private static boolean isConst(Expr e, double v) {
+        return e instanceof NumberLit n && n.getValue() == v;
+    }
+
+    // ---------------- Common subexpressions ----------------
+
+    private Expr shareCommonSubtrees(Expr root) {
+        // structural ids: equal ids <=> identical subtrees (hash-consing, linear time)
+        Map<Expr, Integer> ids = new IdentityHashMap<>();
+        assignIds(root, ids, new HashMap<>());
+
+        Map<Integer, Integer> counts = new HashMap<>();
+        count(root, ids, counts);
+
+        Map<Integer, SharedExpr> shared = new LinkedHashMap<>();
+        Expr body = rebuild(root, ids, counts, shared);
+        if (shared.isEmpty()) return body;
+
+        for (Map.Entry<Integer, SharedExpr> en : shared.entrySet()) {
+            changes.add("share " + key(en.getValue().getExpr()) + " x" + counts.get(en.getKey()));
+        }
+        return new SharedScope(shared.size(), body);
+    }
+
+    private static int assignIds(Expr e, Map<Expr, Integer> ids, Map<String, Integer> table) {
+        String sig;
+        if (e instanceof BinaryOp op) {
+            sig = "B" + op.getCode() + assignIds(op.getLeft(), ids, table) + "," + assignIds(op.getRight(), ids, table);
+        } else if (e instanceof FuncCall fc) {
+            StringBuilder sb = new StringBuilder("F").append(fc.getName());
+            for (Expr arg : fc.getArgs()) sb.append(',').append(assignIds(arg, ids, table));
+            sig = sb.toString();
+        } else {
+            sig = "L" + key(e);
+        }
+        int id = table.computeIfAbsent(sig, k -> table.size());
+        ids.put(e, id);
+        return id;
+    }
+
+    // children of a repeated subtree are only counted for its first occurrence
+    private static void count(Expr e, Map<Expr, Integer> ids, Map<Integer, Integer> counts) {
+        if (!isComposite(e)) return;
+        if (counts.merge(ids.get(e), 1, Integer::sum) > 1) return;
+        for (Expr c : children(e)) count(c, ids, counts);
+    }
+
+    private static Expr rebuild(Expr e, Map<Expr, Integer> ids, Map<Integer, Integer> counts,
+                                Map<Integer, SharedExpr> shared) {
+        if (!isComposite(e)) return e;
+
+        int id = ids.get(e);
+        SharedExpr existing = shared.get(id);
+        if (existing != null) return existing;
+
+        Expr rebuilt;
+        if (e instanceof BinaryOp op) {
+            rebuilt = new BinaryOp(op.getOp(),
+                    rebuild(op.getLeft(), ids, counts, shared),
+                    rebuild(op.getRight(), ids, counts, shared));
+        } else {
+            FuncCall fc = (FuncCall) e;
+            List<Expr> args = new ArrayList<>();
+            for (Expr arg : fc.getArgs()) args.add(rebuild(arg, ids, counts, shared));
+            rebuilt = new FuncCall(fc.getFunction(), args);
+        }
+
+        if (counts.getOrDefault(id, 0) > 1) {
+            SharedExpr se = new SharedExpr(shared.size(), rebuilt);
+            shared.put(id, se);
+            return se;
+        }
+        return rebuilt;
+    }
+
+    private static boolean isComposite(Expr e) {
+        return e instanceof BinaryOp || e instanceof FuncCall;
+    }
+
+    private static List<Expr> children(Expr e) {
+        if (e instanceof BinaryOp op) return List.of(op.getLeft(), op.getRight());
+        if (e instanceof FuncCall fc) return fc.getArgs();
+        return List.of();
+    }
+
+    /** Printable form of a subtree, used in the change report. */
+    static String key(Expr e) {
+        if (e instanceof NumberLit n) return Double.toString(n.getValue());
+        if (e instanceof CellRef ref) return ref.getAddress().toString();
+        if (e instanceof RangeExpr re) return re.getRange().getStart() + ":" + re.getRange().getEnd();
+        if (e instanceof BinaryOp op) return "(" + key(op.getLeft()) + op.getOp() + key(op.getRight()) + ")";
+        if (e instanceof FuncCall fc) {
+            StringBuilder sb = new StringBuilder(fc.getName()).append('(');
+            for (int i = 0; i < fc.getArgs().size(); i++) {
+                if (i > 0) sb.append(',');
+                sb.append(key(fc.getArgs().get(i)));
+            }
+            return sb.append(')').toString();
+        }
+        if (e instanceof SharedExpr se) return key(se.getExpr());
+        if (e instanceof SharedScope sc) return key(sc.getBody());
+        return e.getClass().getSimpleName() + "@" + System.identityHashCode(e);
+    }
+}
@@ -4,241 +4,225 @@ import project.spreadsheet.formula.*;
 import project.spreadsheet.sheet.Address;
 import project.spreadsheet.sheet.Range;
 
-import java.util.*;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
- * Shunting Yard parser:
- * - numbers, + - * /, parentheses
- * - cell refs: A1, B12, AA3
- * - functions: NAME(arg1, arg2, ...)
+ * Single-pass recursive descent parser, builds the AST directly from the text:
+ * - numbers, + - * /, parentheses (usual precedence, left associative)
+ * - cell refs: A1, B12, AA3 (decoded in place, no intermediate strings)
+ * - functions: NAME(arg1, arg2, ...) or NAME(arg1; arg2), resolved in a
+ *   {@link FunctionRegistry} at parse time
  * - ranges: A1:B3 (as RangeExpr)
+ * Whitespace between tokens is ignored. No regex, no token objects.
+ * The AST is then simplified by {@link AstOptimizer} unless optimization is switched off.
  */
 public class Parser {
 
-    public Expr parse(String text) {
-        List<Token> tokens = tokenize(text);
-        List<Token> rpn = toRpn(tokens);
-        return rpnToAst(rpn);
-    }
-
-    // ---------------- Tokenization ----------------
-
-    private List<Token> tokenize(String s) {
-        String input = s.replaceAll("\\s+", "");
-        List<Token> tokens = new ArrayList<>();
-        int i = 0;
+    private final FunctionRegistry functions;
+    private final AstOptimizer optimizer;
 
-        while (i < input.length()) {
-            char c = input.charAt(i);
+    // input of the current parse
+    private String s;
+    private int pos;
 
-            // number
-            if (Character.isDigit(c) || c == '.') {
-                int start = i;
-                while (i < input.length()) {
-                    char ch = input.charAt(i);
-                    if (Character.isDigit(ch) || ch == '.') i++;
-                    else break;
-                }
-                tokens.add(Token.number(input.substring(start, i)));
-                continue;
-            }
+    public Parser() {
+        this(true);
+    }
 
-            // identifier / cell ref
-            if (Character.isLetter(c)) {
-                int start = i;
-                while (i < input.length() && Character.isLetter(input.charAt(i))) i++;
-                String letters = input.substring(start, i).toUpperCase();
-
-                // digits after letters => cell ref
-                int digitStart = i;
-                while (i < input.length() && Character.isDigit(input.charAt(i))) i++;
-                if (digitStart != i) {
-                    String digits = input.substring(digitStart, i);
-                    String cell1 = letters + digits;
-
-                    // range?
-                    if (i < input.length() && input.charAt(i) == ':') {
-                        i++; // skip ':'
-
-                        int start2 = i;
-                        while (i < input.length() && Character.isLetter(input.charAt(i))) i++;
-                        String letters2 = input.substring(start2, i).toUpperCase();
-
-                        int digitStart2 = i;
-                        while (i < input.length() && Character.isDigit(input.charAt(i))) i++;
-                        if (digitStart2 == i) {
-                            throw new IllegalArgumentException("Invalid range end near: " + input.substring(start2));
-                        }
-                        String cell2 = letters2 + input.substring(digitStart2, i);
-
-                        tokens.add(Token.range(cell1 + ":" + cell2));
-                    } else {
-                        tokens.add(Token.cell(cell1));
-                    }
-                    continue;
-                }
+    public Parser(boolean optimize) {
+        this(FunctionRegistry.standard(), optimize);
+    }
 
-                // otherwise => function name (must be followed by '(')
-                tokens.add(Token.ident(letters));
-                continue;
-            }
+    public Parser(FunctionRegistry functions, boolean optimize) {
+        this.functions = functions;
+        this.optimizer = optimize ? new AstOptimizer() : null;
+    }
 
-            // operators / punctuation
-            switch (c) {
-                case '+', '-', '*', '/' -> { tokens.add(Token.op(String.valueOf(c))); i++; }
-                case '(' -> { tokens.add(Token.lparen()); i++; }
-                case ')' -> { tokens.add(Token.rparen()); i++; }
-                case ',' -> { tokens.add(Token.comma()); i++; }
-                default -> throw new IllegalArgumentException("Unexpected character: " + c);
+    public Expr parse(String text) {
+        s = text;
+        pos = 0;
+        try {
+            Expr ast = parseExpression();
+            skipSpaces();
+            if (pos < s.length()) {
+                char c = s.charAt(pos);
+                if (c == ')') throw new IllegalArgumentException("Mismatched parentheses");
+                throw new IllegalArgumentException("Invalid expression");
             }
+            return optimizer == null ? ast : optimizer.optimize(ast);
+        } finally {
+            s = null;
         }
-
-        return tokens;
     }
 
-    // ---------------- Shunting Yard (infix -> RPN) ----------------
+    /** Rewrites done by the optimizer on the last parse (empty when optimization is off). */
+    public List<String> getOptimizations() {
+        return optimizer == null ? List.of() : List.copyOf(optimizer.getChanges());
+    }
 
-    private List<Token> toRpn(List<Token> tokens) {
-        List<Token> out = new ArrayList<>();
-        Deque<Token> ops = new ArrayDeque<>();
-        Deque<Integer> argCount = new ArrayDeque<>();
+    // ---------------- Grammar ----------------
 
-        Token prev = null;
+    // expression := term (('+' | '-') term)*
+    private Expr parseExpression() {
+        Expr left = parseTerm();
+        while (true) {
+            char c = peek();
+            if (c != '+' && c != '-') return left;
+            pos++;
+            left = new BinaryOp(c == '+' ? "+" : "-", left, parseTerm());
+        }
+    }
 
-        for (int i = 0; i < tokens.size(); i++) {
-            Token t = tokens.get(i);
+    // term := factor (('*' | '/') factor)*
+    private Expr parseTerm() {
+        Expr left = parseFactor();
+        while (true) {
+            char c = peek();
+            if (c != '*' && c != '/') return left;
+            pos++;
+            left = new BinaryOp(c == '*' ? "*" : "/", left, parseFactor());
+        }
+    }
 
-            switch (t.type) {
-                case NUMBER, CELL, RANGE -> out.add(t);
+    // factor := number | cell [':' cell] | NAME '(' args ')' | '(' expression ')'
+    private Expr parseFactor() {
+        char c = peek();
 
-                case IDENT -> {
-                    boolean isFunc = (i + 1 < tokens.size() && tokens.get(i + 1).type == TokenType.LPAREN);
-                    if (!isFunc) throw new IllegalArgumentException("Unknown identifier: " + t.text);
-                    ops.push(t.asFunction());
-                }
+        if (isDigit(c) || c == '.') {
+            return parseNumber();
+        }
 
-                case COMMA -> {
-                    while (!ops.isEmpty() && ops.peek().type != TokenType.LPAREN) {
-                        out.add(ops.pop());
-                    }
-                    if (argCount.isEmpty()) throw new IllegalArgumentException("Comma outside function call");
-                    argCount.push(argCount.pop() + 1);
-                }
+        if (isLetter(c)) {
+            int nameStart = pos;
+            int col = 0;
+            while (pos < s.length() && isLetter(s.charAt(pos))) {
+                col = col * 26 + (Character.toUpperCase(s.charAt(pos)) - 'A' + 1);
+                pos++;
+            }
+            int nameEnd = pos;
 
-                case OP -> {
-                    while (!ops.isEmpty() && ops.peek().type == TokenType.OP
-                            && precedence(ops.peek().text) >= precedence(t.text)) {
-                        out.add(ops.pop());
-                    }
-                    ops.push(t);
+            if (pos < s.length() && isDigit(s.charAt(pos))) {
+                if (nameEnd - nameStart > Address.MAX_COLUMN_LETTERS) {
+                    throw new IllegalArgumentException("Invalid cell reference: " + s.substring(nameStart, nameEnd));
                 }
-
-                case LPAREN -> {
-                    if (prev != null && prev.type == TokenType.FUNCTION) {
-                        argCount.push(0);
-                    }
-                    ops.push(t);
+                Address start = new Address(col, parseRow());
+                if (peek() == ':') {
+                    pos++;
+                    skipSpaces();
+                    Address end = parseCell();
+                    return new RangeExpr(new Range(start, end));
                 }
-
-                case RPAREN -> {
-                    while (!ops.isEmpty() && ops.peek().type != TokenType.LPAREN) {
-                        out.add(ops.pop());
-                    }
-                    if (ops.isEmpty()) throw new IllegalArgumentException("Mismatched parentheses");
-                    ops.pop(); // pop '('
-
-                    if (!ops.isEmpty() && ops.peek().type == TokenType.FUNCTION) {
-                        Token fn = ops.pop();
-                        int commas = argCount.isEmpty() ? 0 : argCount.pop();
-                        int finalArgs = (prev != null && prev.type == TokenType.LPAREN) ? 0 : (commas + 1);
-                        out.add(fn.withArity(finalArgs));
-                    }
-                }
-
-                default -> throw new IllegalStateException("Unhandled token: " + t);
+                return new CellRef(start);
             }
 
-            prev = t.type == TokenType.IDENT ? t.asFunction() : t;
+            String name = s.substring(nameStart, nameEnd).toUpperCase();
+            if (peek() != '(') throw new IllegalArgumentException("Unknown identifier: " + name);
+            pos++;
+            return parseCall(name);
         }
 
-        while (!ops.isEmpty()) {
-            Token t = ops.pop();
-            if (t.type == TokenType.LPAREN || t.type == TokenType.RPAREN) throw new IllegalArgumentException("Mismatched parentheses");
-            out.add(t);
+        if (c == '(') {
+            pos++;
+            Expr inner = parseExpression();
+            if (peek() != ')') throw new IllegalArgumentException("Mismatched parentheses");
+            pos++;
+            return inner;
         }
 
-        return out;
+        if (c == 0) throw new IllegalArgumentException("Invalid expression");
+        if (c == ')') throw new IllegalArgumentException("Mismatched parentheses");
+        if (c == '+' || c == '-' || c == '*' || c == '/' || c == ',' || c == ';') {
+            throw new IllegalArgumentException("Invalid expression");
+        }
+        throw new IllegalArgumentException("Unexpected character: " + c);
     }
 
-    private int precedence(String op) {
-        return switch (op) {
-            case "+", "-" -> 1;
-            case "*", "/" -> 2;
-            default -> 0;
-        };
+    // after "NAME(": args := [expression ((',' | ';') expression)*] ')'
+    private Expr parseCall(String name) {
+        FormulaFunction fn = functions.resolve(name);
+        List<Expr> args = new ArrayList<>();
+        if (peek() == ')') {
+            pos++;
+            return new FuncCall(fn, args);
+        }
+        while (true) {
+            args.add(parseExpression());
+            char c = peek();
+            if (c == ',' || c == ';') {
+                pos++;
+                continue;
+            }
+            if (c != ')') throw new IllegalArgumentException("Mismatched parentheses");
+            pos++;
+            return new FuncCall(fn, args);
+        }
     }
 
-    // ---------------- RPN -> AST ----------------
-
-    private Expr rpnToAst(List<Token> rpn) {
-        Deque<Expr> st = new ArrayDeque<>();
-
-        for (Token t : rpn) {
-            switch (t.type) {
-                case NUMBER -> st.push(new NumberLit(Double.parseDouble(t.text)));
-
-                case CELL -> st.push(new CellRef(Address.parse(t.text)));
-
-                case RANGE -> st.push(new RangeExpr(Range.parse(t.text)));
-
-                case OP -> {
-                    Expr right = st.pop();
-                    Expr left = st.pop();
-                    st.push(new BinaryOp(t.text, left, right));
-                }
-
-                case FUNCTION -> {
-                    int n = t.arity;
-                    List<Expr> args = new ArrayList<>();
-                    for (int i = 0; i < n; i++) args.add(st.pop());
-                    Collections.reverse(args);
-                    st.push(new FuncCall(t.text, args));
-                }
-
-                default -> throw new IllegalArgumentException("Bad RPN token: " + t.type);
+    // ---------------- Lexing helpers ----------------
+
+    private Expr parseNumber() {
+        int start = pos;
+        long whole = 0;
+        int digits = 0;
+        boolean simple = true;   // only digits, few enough to be exact in a long/double
+
+        while (pos < s.length()) {
+            char ch = s.charAt(pos);
+            if (isDigit(ch)) {
+                whole = whole * 10 + (ch - '0');
+                digits++;
+            } else if (ch == '.') {
+                simple = false;
+            } else {
+                break;
             }
+            pos++;
         }
 
-        if (st.size() != 1) throw new IllegalArgumentException("Invalid expression");
-        return st.pop();
+        if (simple && digits <= 15) return new NumberLit(whole);
+        return new NumberLit(Double.parseDouble(s.substring(start, pos)));
     }
 
-    // ---------------- Token model ----------------
+    private Address parseCell() {
+        int col = 0;
+        int start = pos;
+        while (pos < s.length() && isLetter(s.charAt(pos))) {
+            col = col * 26 + (Character.toUpperCase(s.charAt(pos)) - 'A' + 1);
+            pos++;
+        }
+        if (pos == start || pos == s.length() || !isDigit(s.charAt(pos))
+                || pos - start > Address.MAX_COLUMN_LETTERS) {
+            throw new IllegalArgumentException("Invalid range end near: " + s.substring(start));
+        }
+        return new Address(col, parseRow());
+    }
 
-    private enum TokenType { NUMBER, CELL, RANGE, IDENT, FUNCTION, OP, LPAREN, RPAREN, COMMA }
+    private int parseRow() {
+        long row = 0;
+        while (pos < s.length() && isDigit(s.charAt(pos))) {
+            row = row * 10 + (s.charAt(pos) - '0');
+            if (row > Integer.MAX_VALUE) throw new IllegalArgumentException("Row out of range");
+            pos++;
+        }
+        return (int) row;
+    }
 
-    private static class Token {
-        final TokenType type;
-        final String text;
-        final int arity;
+    /** Next non-space character (not consumed), or 0 at the end. */
+    private char peek() {
+        skipSpaces();
+        return pos < s.length() ? s.charAt(pos) : 0;
+    }
 
-        Token(TokenType type, String text) { this(type, text, -1); }
-        Token(TokenType type, String text, int arity) {
-            this.type = type;
-            this.text = text;
-            this.arity = arity;
-        }
+    private void skipSpaces() {
+        while (pos < s.length() && Character.isWhitespace(s.charAt(pos))) pos++;
+    }
 
-        static Token number(String t) { return new Token(TokenType.NUMBER, t); }
-        static Token cell(String t) { return new Token(TokenType.CELL, t); }
-        static Token range(String t) { return new Token(TokenType.RANGE, t); }
-        static Token ident(String t) { return new Token(TokenType.IDENT, t); }
-        static Token op(String t) { return new Token(TokenType.OP, t); }
-        static Token lparen() { return new Token(TokenType.LPAREN, "("); }
-        static Token rparen() { return new Token(TokenType.RPAREN, ")"); }
-        static Token comma() { return new Token(TokenType.COMMA, ","); }
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
 
-        Token asFunction() { return new Token(TokenType.FUNCTION, this.text); }
-        Token withArity(int a) { return new Token(TokenType.FUNCTION, this.text, a); }
+    private static boolean isLetter(char c) {
+        return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z');
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,105 @@
+package project.spreadsheet.parser;
+
+import project.spreadsheet.sheet.Address;
+
+/**
+ * Conversion between formula text (A1 references) and its canonical R1C1 form, where every
+ * reference is written as an offset from the cell holding the formula: in D7, "B7*C7" becomes
+ * "R[0]C[-2]*R[0]C[-1]". Whitespace is dropped unless it separates two words, names are
+ * upper-cased and numbers keep their original spelling, so formulas that parse to the same
+ * relative AST get the same text.
+ */
+public final class R1C1Notation {
+
+    private R1C1Notation() {}
+
+    /** Canonical R1C1 text of {@code formula} (without '=') written in cell (column, row). */
+    public static String canonical(String formula, int column, int row) {
+        StringBuilder out = new StringBuilder(formula.length() + 16);
+        int n = formula.length();
+        int i = 0;
+
+        while (i < n) {
+            char c = formula.charAt(i);
+
+            if (Character.isWhitespace(c)) {
+                while (i < n && Character.isWhitespace(formula.charAt(i))) i++;
+                // keep one space where it separates two tokens ("A 1", "1 2"): the parser rejects those
+                if (out.length() > 0 && i < n && isWord(out.charAt(out.length() - 1)) && isWord(formula.charAt(i))) {
+                    out.append(' ');
+                }
+                continue;
+            }
+
+            if (isLetter(c)) {
+                int start = i;
+                int col = 0;
+                while (i < n && isLetter(formula.charAt(i))) {
+                    col = col * 26 + (Character.toUpperCase(formula.charAt(i)) - 'A' + 1);
+                    i++;
+                }
+                if (i < n && isDigit(formula.charAt(i))) {
+                    long r = 0;
+                    while (i < n && isDigit(formula.charAt(i))) {
+                        r = r * 10 + (formula.charAt(i) - '0');
+                        if (r > Integer.MAX_VALUE) throw new IllegalArgumentException("Row out of range");
+                        i++;
+                    }
+                    if (col < 1 || r < 1) throw new IllegalArgumentException("column and row must be >= 1");
+                    out.append("R[").append(r - row).append("]C[").append(col - column).append(']');
+                } else {
+                    for (int k = start; k < i; k++) out.append(Character.toUpperCase(formula.charAt(k)));
+                }
+                continue;
+            }
+
+            // '[' and ']' only ever come from references; rejecting them keeps keys unambiguous
+            if (c == '[' || c == ']') throw new IllegalArgumentException("Unexpected character: " + c);
+            out.append(c);
+            i++;
+        }
+        return out.toString();
+    }
+
+    /** A1 text of a canonical formula when written in cell (column, row). */
+    public static String toA1(String canonical, int column, int row) {
+        StringBuilder out = new StringBuilder(canonical.length());
+        int n = canonical.length();
+        int i = 0;
+
+        while (i < n) {
+            char c = canonical.charAt(i);
+            if (isLetter(c)) {
+                int start = i;
+                while (i < n && isLetter(canonical.charAt(i))) i++;
+                if (i - start == 1 && c == 'R' && i < n && canonical.charAt(i) == '[') {
+                    int close = canonical.indexOf(']', i);
+                    int dRow = Integer.parseInt(canonical, i + 1, close, 10);
+                    int open = close + 2; // skip "]C"
+                    close = canonical.indexOf(']', open);
+                    int dCol = Integer.parseInt(canonical, open + 1, close, 10);
+                    out.append(new Address(column + dCol, row + dRow));
+                    i = close + 1;
+                } else {
+                    out.append(canonical, start, i);
+                }
+                continue;
+            }
+            out.append(c);
+            i++;
+        }
+        return out.toString();
+    }
+
+    private static boolean isWord(char c) {
+        return isLetter(c) || isDigit(c) || c == '.' || c == ']';
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isLetter(char c) {
+        return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z');
+    }
+}
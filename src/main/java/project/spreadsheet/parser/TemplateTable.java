@@ -0,0 +1,61 @@
+package project.spreadsheet.parser;
+
+import project.spreadsheet.formula.Expr;
+import project.spreadsheet.formula.FormulaTemplate;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interned formula templates, keyed by canonical R1C1 text. A formula is only parsed the
+ * first time its shape is seen; filled-down copies just look up the template.
+ * Thread-safe: lookups do not lock, new shapes are parsed one at a time (the parser
+ * is not thread-safe).
+ */
+public class TemplateTable {
+
+    private final Parser parser;
+    private final Map<String, FormulaTemplate> templates = new ConcurrentHashMap<>();
+    // written under the parser's lock
+    private volatile long parsed;
+
+    public TemplateTable() {
+        this(new Parser());
+    }
+
+    public TemplateTable(Parser parser) {
+        this.parser = parser;
+    }
+
+    /** Template of {@code formula} (without '=') written in cell (column, row). */
+    public FormulaTemplate intern(String formula, int column, int row) {
+        String key = R1C1Notation.canonical(formula, column, row);
+        FormulaTemplate t = templates.get(key);
+        if (t != null) return t;
+        synchronized (parser) {
+            t = templates.get(key);
+            if (t == null) {
+                Expr ast = parser.parse(formula);
+                parsed++;
+                t = FormulaTemplate.of(key, ast, column, row);
+                templates.put(key, t);
+            }
+        }
+        return t;
+    }
+
+    /** The template already interned under the key of {@code t}, or {@code t} itself (now interned). */
+    public FormulaTemplate adopt(FormulaTemplate t) {
+        FormulaTemplate existing = templates.putIfAbsent(t.getKey(), t);
+        return existing != null ? existing : t;
+    }
+
+    public int size() {
+        return templates.size();
+    }
+
+    /** Formulas parsed by {@link #intern} so far (lookups of known shapes not counted). */
+    public long getParseCount() {
+        return parsed;
+    }
+}
@@ -1,9 +1,10 @@
 package project.spreadsheet.sheet;
 
-import java.util.Objects;
-
 public final class Address {
 
+    /** Longest column name accepted in a reference ("ZZZZZZ"). */
+    public static final int MAX_COLUMN_LETTERS = 6;
+
     private final int column;
     private final int row;
 
@@ -24,19 +25,57 @@ public final class Address {
         return row;
     }
 
+    /** Packed (column, row) key: column in the high 32 bits, row in the low 32 bits. */
+    public static long key(int column, int row) {
+        return ((long) column << 32) | (row & 0xFFFFFFFFL);
+    }
+
+    public static int columnOf(long key) {
+        return (int) (key >>> 32);
+    }
+
+    public static int rowOf(long key) {
+        return (int) key;
+    }
+
+    public static Address fromKey(long key) {
+        return new Address(columnOf(key), rowOf(key));
+    }
+
+    public long key() {
+        return key(column, row);
+    }
+
+    /** Parses "A1" / "aa12"; surrounding spaces and '$' markers are ignored. */
     public static Address parse(String ref) {
-        String trimmed = ref.trim();
-        String letters = trimmed.replaceAll("[^A-Za-z]", "").toUpperCase();
-        String digits  = trimmed.replaceAll("[^0-9]", "");
-        if (letters.isEmpty() || digits.isEmpty()) {
-            throw new IllegalArgumentException("Invalid address: " + ref);
-        }
+        String s = ref.trim();
+        int n = s.length();
+        int i = 0;
         int col = 0;
-        for (char c : letters.toCharArray()) {
+        long row = 0;
+
+        if (i < n && s.charAt(i) == '$') i++;
+        int lettersStart = i;
+        for (; i < n; i++) {
+            char c = Character.toUpperCase(s.charAt(i));
+            if (c < 'A' || c > 'Z') break;
             col = col * 26 + (c - 'A' + 1);
         }
-        int row = Integer.parseInt(digits);
-        return new Address(col, row);
+        int letters = i - lettersStart;
+
+        if (i < n && s.charAt(i) == '$') i++;
+        int digitsStart = i;
+        for (; i < n; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') break;
+            row = row * 10 + (c - '0');
+            if (row > Integer.MAX_VALUE) throw new IllegalArgumentException("Invalid address: " + ref);
+        }
+
+        if (letters == 0 || letters > MAX_COLUMN_LETTERS || i == digitsStart || i != n) {
+            throw new IllegalArgumentException("Invalid address: " + ref);
+        }
+        return new Address(col, (int) row);
     }
 
     @Override
@@ -62,7 +101,6 @@ public final class Address {
 
     @Override
     public int hashCode() {
-
-        return Objects.hash(column, row);
+        return 31 * column + row;
     }
 }
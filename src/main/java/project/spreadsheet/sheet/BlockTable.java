@@ -0,0 +1,97 @@
+package project.spreadsheet.sheet;
+
+import java.util.function.Consumer;
+
+/**
+ * Blocks of a sheet by packed block key ({@link Address#key} of block column and row),
+ * split into stripes by block row: stripe {@code s} holds the block rows {@code r} with
+ * {@code r % STRIPES == s}. Each stripe has its own map and cell count and is the lock
+ * of its blocks, so threads writing different bands of rows do not contend.
+ * Lookups do not lock; whoever changes a stripe concurrently with others holds its lock.
+ * A stripe is marked changed when a block is added, removed or modified, so publishing
+ * a version only copies the stripes changed since the last one.
+ */
+final class BlockTable {
+
+    static final int STRIPES = 64;
+
+    static final class Stripe {
+        final LongObjectMap<CellBlock> blocks = new LongObjectMap<>();
+        // non-empty cells in the blocks of this stripe
+        int cells;
+        // a block was added, removed or modified since the stripe was last published
+        boolean changed;
+    }
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    BlockTable() {
+        for (int s = 0; s < STRIPES; s++) stripes[s] = new Stripe();
+    }
+
+    Stripe stripe(int blockRow) {
+        return stripes[blockRow & (STRIPES - 1)];
+    }
+
+    /** Stripe number {@code s}, {@code 0 <= s < STRIPES}. */
+    Stripe stripeAt(int s) {
+        return stripes[s];
+    }
+
+    private Stripe stripeOf(long key) {
+        return stripes[(int) key & (STRIPES - 1)];
+    }
+
+    CellBlock get(long key) {
+        return stripeOf(key).blocks.get(key);
+    }
+
+    /** Add a block (none is stored under its key yet), with its cells. */
+    void add(long key, CellBlock block) {
+        Stripe s = stripeOf(key);
+        s.blocks.put(key, block);
+        s.cells += block.size();
+        s.changed = true;
+        block.stripe = s;
+    }
+
+    /** Remove a block with its cells; null if there was none. */
+    CellBlock remove(long key) {
+        Stripe s = stripeOf(key);
+        CellBlock b = s.blocks.remove(key);
+        if (b != null) {
+            s.cells -= b.size();
+            s.changed = true;
+            b.stripe = null;
+        }
+        return b;
+    }
+
+    int blockCount() {
+        int n = 0;
+        for (Stripe s : stripes) n += s.blocks.size();
+        return n;
+    }
+
+    int cellCount() {
+        int n = 0;
+        for (Stripe s : stripes) n += s.cells;
+        return n;
+    }
+
+    void forEachValue(Consumer<CellBlock> action) {
+        for (Stripe s : stripes) s.blocks.forEachValue(action);
+    }
+
+    /** Snapshot of all blocks (safe to iterate while the table changes). */
+    Object[] valuesArray() {
+        Object[] out = new Object[blockCount()];
+        int n = 0;
+        for (Stripe s : stripes) {
+            Object[] part = s.blocks.valuesArray();
+            System.arraycopy(part, 0, out, n, part.length);
+            n += part.length;
+        }
+        return out;
+    }
+}
@@ -2,14 +2,32 @@ package project.spreadsheet.sheet;
 
 import project.spreadsheet.content.Content;
 
+/**
+ * Read-only view of one stored cell. Cells live in {@link CellBlock}s;
+ * this object is only created when a caller asks for it.
+ */
 public class Cell {
-    private Content content;
+    private final Content content;
+
+    // last computed value; only meaningful while valid
+    private final double value;
+    private final boolean valid;
+
+    public Cell(Content content, double value, boolean valid) {
+        this.content = content;
+        this.value = value;
+        this.valid = valid;
+    }
 
     public Content getContent() {
         return content;
     }
 
-    public void setContent(Content content) {
-        this.content = content;
+    public boolean hasValue() {
+        return valid;
+    }
+
+    public double getValue() {
+        return value;
     }
 }
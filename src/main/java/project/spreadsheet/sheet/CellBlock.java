@@ -0,0 +1,204 @@
+package project.spreadsheet.sheet;
+
+import project.spreadsheet.content.Content;
+import project.spreadsheet.content.FormulaContent;
+import project.spreadsheet.content.NumericContent;
+import project.spreadsheet.content.TextContent;
+import project.spreadsheet.formula.FormulaTemplate;
+
+/**
+ * Fixed-size block of cells (ROWS x COLS) stored column-major in primitive arrays:
+ * - tags: kind of each cell (+ a flag telling whether a formula value is cached)
+ * - values: numbers, and cached results of formulas
+ * - objects: TextContent / FormulaTemplate only (allocated on first use)
+ * Numbers and formulas never get a Content object per cell; one is created on demand when
+ * asked for. Formula cells only hold a reference to their (shared) template.
+ */
+public final class CellBlock {
+
+    public static final int ROW_BITS = 7;
+    public static final int COL_BITS = 3;
+    public static final int ROWS = 1 << ROW_BITS;
+    public static final int COLS = 1 << COL_BITS;
+    public static final int SIZE = ROWS * COLS;
+
+    public static final byte EMPTY = 0;
+    public static final byte NUMBER = 1;
+    public static final byte TEXT = 2;
+    public static final byte FORMULA = 3;
+
+    private static final byte KIND_MASK = 0x0F;
+    private static final byte VALID = 0x10;
+
+    private final int blockCol;
+    private final int blockRow;
+
+    private final byte[] tags = new byte[SIZE];
+    private final double[] values = new double[SIZE];
+    private Object[] objects;
+    private int count;
+
+    // modified since the last freeze()
+    private boolean changed = true;
+    // stripe of the table holding the block, marked changed along with it
+    BlockTable.Stripe stripe;
+
+    CellBlock(int blockCol, int blockRow) {
+        this.blockCol = blockCol;
+        this.blockRow = blockRow;
+    }
+
+    /** Block column of a 1-based column. */
+    public static int blockCol(int column) {
+        return (column - 1) >>> COL_BITS;
+    }
+
+    /** Block row of a 1-based row. */
+    public static int blockRow(int row) {
+        return (row - 1) >>> ROW_BITS;
+    }
+
+    /** Slot of a cell inside its block (column-major, so column scans are contiguous). */
+    public static int index(int column, int row) {
+        return (((column - 1) & (COLS - 1)) << ROW_BITS) | ((row - 1) & (ROWS - 1));
+    }
+
+    public int getBlockCol() { return blockCol; }
+    public int getBlockRow() { return blockRow; }
+
+    /** 1-based column of a slot. */
+    public int columnOf(int index) {
+        return (blockCol << COL_BITS) + (index >>> ROW_BITS) + 1;
+    }
+
+    /** 1-based row of a slot. */
+    public int rowOf(int index) {
+        return (blockRow << ROW_BITS) + (index & (ROWS - 1)) + 1;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public byte kind(int index) {
+        return (byte) (tags[index] & KIND_MASK);
+    }
+
+    /** Numbers and text always have a value; formulas only once computed. */
+    public boolean hasValue(int index) {
+        byte t = tags[index];
+        return (t & KIND_MASK) != FORMULA || (t & VALID) != 0;
+    }
+
+    /** Number, cached formula result, or 0 for text/empty. */
+    public double value(int index) {
+        return values[index];
+    }
+
+    public void setValue(int index, double value) {
+        values[index] = value;
+        tags[index] |= VALID;
+        touch();
+    }
+
+    public void invalidate(int index) {
+        if (kind(index) == FORMULA) {
+            tags[index] &= ~VALID;
+            touch();
+        }
+    }
+
+    public FormulaTemplate template(int index) {
+        return kind(index) == FORMULA ? (FormulaTemplate) objects[index] : null;
+    }
+
+    /** Content of a slot, or null if empty. */
+    public Content content(int index) {
+        return switch (kind(index)) {
+            case NUMBER -> new NumericContent(values[index]);
+            case TEXT -> (Content) objects[index];
+            case FORMULA -> new FormulaContent((FormulaTemplate) objects[index], columnOf(index), rowOf(index));
+            default -> null;
+        };
+    }
+
+    void put(int index, Content content) {
+        if (content instanceof TextContent t && t.getText().isEmpty()) {
+            clear(index);
+        } else if (content instanceof NumericContent n) {
+            putNumber(index, n.getNumber());
+        } else if (content instanceof FormulaContent f) {
+            putObject(index, FORMULA, f.getTemplate());
+        } else {
+            putObject(index, TEXT, content);
+        }
+    }
+
+    void putNumber(int index, double value) {
+        if (kind(index) == EMPTY) count++;
+        touch();
+        tags[index] = NUMBER;
+        values[index] = value;
+        if (objects != null) objects[index] = null;
+    }
+
+    void putFormula(int index, FormulaTemplate template) {
+        putObject(index, FORMULA, template);
+    }
+
+    /** Swap the template of a formula slot; its cached value is kept. */
+    void replaceTemplate(int index, FormulaTemplate template) {
+        objects[index] = template;
+        touch();
+    }
+
+    private void putObject(int index, byte kind, Object o) {
+        if (kind(index) == EMPTY) count++;
+        touch();
+        tags[index] = kind;
+        values[index] = 0.0;
+        if (objects == null) objects = new Object[SIZE];
+        objects[index] = o;
+    }
+
+    /** Copy slot {@code index} of {@code src} (a block at the same position); cached values are not kept. */
+    void copy(CellBlock src, int index) {
+        switch (src.kind(index)) {
+            case NUMBER -> putNumber(index, src.values[index]);
+            case TEXT -> putObject(index, TEXT, src.objects[index]);
+            case FORMULA -> putObject(index, FORMULA, src.objects[index]);
+            default -> clear(index);
+        }
+    }
+
+    void clear(int index) {
+        if (kind(index) == EMPTY) return;
+        count--;
+        touch();
+        tags[index] = EMPTY;
+        values[index] = 0.0;
+        if (objects != null) objects[index] = null;
+    }
+
+    private void touch() {
+        if (changed) return;
+        changed = true;
+        if (stripe != null) stripe.changed = true;
+    }
+
+    /** Whether the block was modified since its last {@link #freeze}. */
+    boolean isChanged() {
+        return changed;
+    }
+
+    /** A copy of the block as it is now, for a {@link SheetVersion}; the block counts as unchanged again. */
+    CellBlock freeze() {
+        CellBlock copy = new CellBlock(blockCol, blockRow);
+        System.arraycopy(tags, 0, copy.tags, 0, SIZE);
+        System.arraycopy(values, 0, copy.values, 0, SIZE);
+        if (objects != null) copy.objects = objects.clone();
+        copy.count = count;
+        changed = false;
+        return copy;
+    }
+}
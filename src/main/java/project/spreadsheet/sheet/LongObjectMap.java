@@ -0,0 +1,148 @@
+package project.spreadsheet.sheet;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Open-addressing hash map with primitive {@code long} keys (linear probing,
+ * backward-shift deletion). Used for packed cell / block keys so lookups
+ * do not box or allocate.
+ */
+public final class LongObjectMap<V> {
+
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private long[] keys;
+    private Object[] vals;
+    private boolean[] used;
+    private int size;
+    private int resizeAt;
+
+    public LongObjectMap() {
+        this(16);
+    }
+
+    public LongObjectMap(int expected) {
+        int cap = Integer.highestOneBit(Math.max(4, (int) (expected / LOAD_FACTOR)) - 1) << 1;
+        allocate(cap);
+    }
+
+    private void allocate(int cap) {
+        keys = new long[cap];
+        vals = new Object[cap];
+        used = new boolean[cap];
+        resizeAt = (int) (cap * LOAD_FACTOR);
+    }
+
+    private static int mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+
+    private int slot(long key) {
+        int mask = keys.length - 1;
+        int i = mix(key) & mask;
+        while (used[i] && keys[i] != key) i = (i + 1) & mask;
+        return i;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        int i = slot(key);
+        return used[i] ? (V) vals[i] : null;
+    }
+
+    public boolean containsKey(long key) {
+        return used[slot(key)];
+    }
+
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        int i = slot(key);
+        if (used[i]) {
+            V old = (V) vals[i];
+            vals[i] = value;
+            return old;
+        }
+        used[i] = true;
+        keys[i] = key;
+        vals[i] = value;
+        if (++size > resizeAt) rehash(keys.length << 1);
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        int i = slot(key);
+        if (!used[i]) return null;
+        V old = (V) vals[i];
+
+        // backward-shift: move later entries of the probe chain into the hole
+        int mask = keys.length - 1;
+        int hole = i;
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            if (!used[j]) break;
+            int home = mix(keys[j]) & mask;
+            boolean movable = (hole <= j) ? (home <= hole || home > j) : (home <= hole && home > j);
+            if (movable) {
+                keys[hole] = keys[j];
+                vals[hole] = vals[j];
+                hole = j;
+            }
+        }
+        used[hole] = false;
+        vals[hole] = null;
+        size--;
+        return old;
+    }
+
+    public void clear() {
+        Arrays.fill(used, false);
+        Arrays.fill(vals, null);
+        size = 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void forEachValue(Consumer<? super V> action) {
+        for (int i = 0; i < keys.length; i++) {
+            if (used[i]) action.accept((V) vals[i]);
+        }
+    }
+
+    /** Snapshot of the values (safe to iterate while the map changes). */
+    public Object[] valuesArray() {
+        Object[] out = new Object[size];
+        int n = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (used[i]) out[n++] = vals[i];
+        }
+        return out;
+    }
+
+    private void rehash(int cap) {
+        long[] oldKeys = keys;
+        Object[] oldVals = vals;
+        boolean[] oldUsed = used;
+        allocate(cap);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldUsed[i]) {
+                int s = slot(oldKeys[i]);
+                used[s] = true;
+                keys[s] = oldKeys[i];
+                vals[s] = oldVals[i];
+            }
+        }
+    }
+}
@@ -13,6 +13,11 @@ public class Range {
     public Address getStart() { return start; }
     public Address getEnd()   { return end; }
 
+    public boolean contains(int column, int row) {
+        return column >= start.getColumn() && column <= end.getColumn()
+                && row >= start.getRow() && row <= end.getRow();
+    }
+
     public static Range parse(String spec) {
         String[] parts = spec.split(":");
         if (parts.length != 2) {
@@ -0,0 +1,18 @@
+package project.spreadsheet.sheet;
+
+/**
+ * Cells a lazily loaded {@link Spreadsheet} reads on demand, one band of
+ * {@link CellBlock#ROWS} rows at a time (see {@link Spreadsheet#attach}).
+ * Reading a band again must give the same cells.
+ */
+public interface RowSource {
+
+    /**
+     * Cells of rows {@code band * ROWS + 1} to {@code (band + 1) * ROWS}, nothing else;
+     * an empty fragment past the end of the source.
+     */
+    SheetFragment readBand(int band);
+
+    /** Bands up to the last one holding cells. */
+    int bandCount();
+}
@@ -0,0 +1,81 @@
+package project.spreadsheet.sheet;
+
+import project.spreadsheet.content.ContentParser;
+import project.spreadsheet.content.TextContent;
+import project.spreadsheet.formula.FormulaTemplate;
+import project.spreadsheet.parser.TemplateTable;
+
+/**
+ * Cells built apart from any {@link Spreadsheet} (e.g. by one loader thread), to be added
+ * with {@link Spreadsheet#merge}. Holds contents and, optionally, formula values; no
+ * dependency graph.
+ * Not thread-safe: use one fragment per thread.
+ */
+public final class SheetFragment {
+
+    private final LongObjectMap<CellBlock> blocks = new LongObjectMap<>();
+    private final TemplateTable templates = new TemplateTable();
+
+    // rows are filled left to right, so most writes hit the block of the previous one
+    private CellBlock last;
+
+    public void setNumber(int column, int row, double value) {
+        block(column, row).putNumber(CellBlock.index(column, row), value);
+    }
+
+    /** Formula text without the leading '='. */
+    public void setFormula(int column, int row, String formula) {
+        block(column, row).putFormula(CellBlock.index(column, row), templates.intern(formula, column, row));
+    }
+
+    public void setText(int column, int row, String text) {
+        block(column, row).put(CellBlock.index(column, row), new TextContent(text));
+    }
+
+    /** Formula with an already built template and its last computed value. */
+    public void setFormula(int column, int row, FormulaTemplate template, double value) {
+        CellBlock b = block(column, row);
+        int i = CellBlock.index(column, row);
+        b.putFormula(i, template);
+        b.setValue(i, value);
+    }
+
+    /** Formula with an already built template, not computed yet. */
+    public void setFormula(int column, int row, FormulaTemplate template) {
+        block(column, row).putFormula(CellBlock.index(column, row), template);
+    }
+
+    /** Same parsing rules as {@link Spreadsheet#setRawContent}; empty content is ignored. */
+    public void setRawContent(int column, int row, String raw) {
+        if (raw == null || raw.isEmpty()) return;
+        if (raw.startsWith("=")) {
+            setFormula(column, row, raw.substring(1));
+        } else {
+            block(column, row).put(CellBlock.index(column, row), ContentParser.parse(raw));
+        }
+    }
+
+    LongObjectMap<CellBlock> blocks() {
+        return blocks;
+    }
+
+    long parseCount() {
+        return templates.getParseCount();
+    }
+
+    private CellBlock block(int column, int row) {
+        int bc = CellBlock.blockCol(column);
+        int br = CellBlock.blockRow(row);
+        CellBlock b = last;
+        if (b != null && b.getBlockCol() == bc && b.getBlockRow() == br) return b;
+
+        long key = Address.key(bc, br);
+        b = blocks.get(key);
+        if (b == null) {
+            b = new CellBlock(bc, br);
+            blocks.put(key, b);
+        }
+        last = b;
+        return b;
+    }
+}
@@ -0,0 +1,111 @@
+package project.spreadsheet.sheet;
+
+import project.spreadsheet.content.Content;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * Immutable version of a sheet's cells and computed values, published by
+ * {@link Spreadsheet#publish}. Any number of threads may read a version without locking
+ * while the writer edits the sheet and publishes newer ones. Versions share the blocks
+ * that did not change between them, and the block maps of stripes ({@link BlockTable})
+ * without any change; a version nobody references any more is simply garbage collected.
+ */
+public final class SheetVersion {
+
+    static final SheetVersion EMPTY = new SheetVersion(0, emptyStripes(), 0);
+
+    private final long number;
+    // copies of the sheet's blocks by stripe; never modified once the version is built
+    private final LongObjectMap<CellBlock>[] stripes;
+    private final int size;
+
+    SheetVersion(long number, LongObjectMap<CellBlock>[] stripes, int size) {
+        this.number = number;
+        this.stripes = stripes;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    static LongObjectMap<CellBlock>[] newStripes() {
+        return (LongObjectMap<CellBlock>[]) new LongObjectMap<?>[BlockTable.STRIPES];
+    }
+
+    private static LongObjectMap<CellBlock>[] emptyStripes() {
+        LongObjectMap<CellBlock>[] stripes = newStripes();
+        LongObjectMap<CellBlock> empty = new LongObjectMap<>();
+        Arrays.fill(stripes, empty);
+        return stripes;
+    }
+
+    /** 1 for the first published version, then counting up; 0 before anything is published. */
+    public long getNumber() {
+        return number;
+    }
+
+    /** Number of non-empty cells. */
+    public int size() {
+        return size;
+    }
+
+    /** Blocks of stripe {@code s}. */
+    LongObjectMap<CellBlock> stripe(int s) {
+        return stripes[s];
+    }
+
+    CellBlock block(long key) {
+        return stripes[(int) key & (BlockTable.STRIPES - 1)].get(key);
+    }
+
+    CellBlock getBlock(int column, int row) {
+        return block(Address.key(CellBlock.blockCol(column), CellBlock.blockRow(row)));
+    }
+
+    public Optional<Cell> findCell(Address addr) {
+        return findCell(addr.getColumn(), addr.getRow());
+    }
+
+    public Optional<Cell> findCell(int column, int row) {
+        CellBlock block = getBlock(column, row);
+        if (block == null) return Optional.empty();
+
+        int i = CellBlock.index(column, row);
+        Content content = block.content(i);
+        if (content == null) return Optional.empty();
+        return Optional.of(new Cell(content, block.value(i), block.hasValue(i)));
+    }
+
+    public String getRawContent(Address addr) {
+        return getRawContent(addr.getColumn(), addr.getRow());
+    }
+
+    public String getRawContent(int column, int row) {
+        CellBlock block = getBlock(column, row);
+        if (block == null) return "";
+        Content content = block.content(CellBlock.index(column, row));
+        return content == null ? "" : content.raw();
+    }
+
+    public double getCellValue(Address addr) {
+        return getCellValue(addr.getColumn(), addr.getRow());
+    }
+
+    /**
+     * Value of a cell as of this version, by the rules of the evaluation context (empty and
+     * text are 0). A formula has the value the writer computed before publishing; one it
+     * could not compute (e.g. on a reference cycle) has none.
+     *
+     * @throws IllegalStateException if the cell is a formula without a value
+     */
+    public double getCellValue(int column, int row) {
+        CellBlock block = getBlock(column, row);
+        if (block == null) return 0.0;
+
+        int i = CellBlock.index(column, row);
+        if (!block.hasValue(i)) {
+            throw new IllegalStateException("No value for " + new Address(column, row) + " in version " + number);
+        }
+        return block.value(i);
+    }
+}
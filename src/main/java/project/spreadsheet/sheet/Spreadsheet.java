@@ -1,38 +1,513 @@
 package project.spreadsheet.sheet;
 
+import project.spreadsheet.calc.DependencyGraph;
+import project.spreadsheet.calc.RangeIndex;
 import project.spreadsheet.content.Content;
 import project.spreadsheet.content.ContentParser;
+import project.spreadsheet.content.FormulaContent;
+import project.spreadsheet.formula.FormulaTemplate;
+import project.spreadsheet.parser.TemplateTable;
 
-import java.util.HashMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Cell storage: cells are kept in fixed-size {@link CellBlock}s indexed by packed
+ * block coordinates. The (column, row) overloads avoid allocating an Address.
+ * <p>
+ * {@link #setRawContent} and {@link #setRawContents} may be called from several threads
+ * at once (not on a lazy sheet): cells are stored under the lock of their stripe of row
+ * blocks (see {@link BlockTable}), and the dependency graph and the range index lock per
+ * cell or column, so writers of different regions share no lock. This is the entry point
+ * for concurrent writers; {@code SpreadsheetController} is single-writer. Everything else
+ * (lookups, evaluation, merging, publishing) must not overlap with writers; readers on
+ * other threads use published {@link SheetVersion}s.
+ */
 public class Spreadsheet {
 
-    private final Map<Address, Cell> cells = new HashMap<>();
+    private final BlockTable blocks = new BlockTable();
+    private final DependencyGraph graph = new DependencyGraph();
+    private final RangeIndex rangeIndex = new RangeIndex();
+    private final TemplateTable templates = new TemplateTable();
 
-    private Cell ensureCell(Address addr) {
-        return cells.computeIfAbsent(addr, a -> new Cell());
+    // formulas parsed into fragments before they were merged here
+    private long mergedParses;
+
+    // calls that changed cells (edits and merges), by any thread
+    private final AtomicLong editCount = new AtomicLong();
+
+    // bands read on demand (lazy sheets only)
+    private LazyBands lazy;
+
+    // last published version; written by the writer only, read by any thread
+    private volatile SheetVersion version = SheetVersion.EMPTY;
+
+    private static long blockKey(int blockCol, int blockRow) {
+        return Address.key(blockCol, blockRow);
+    }
+
+    /** Block holding (column, row), or null if nothing was ever stored there. */
+    public CellBlock getBlock(int column, int row) {
+        int br = CellBlock.blockRow(row);
+        if (lazy != null) lazy.touch(br);
+        return blocks.get(blockKey(CellBlock.blockCol(column), br));
+    }
+
+    private CellBlock ensureBlock(int column, int row) {
+        int bc = CellBlock.blockCol(column);
+        int br = CellBlock.blockRow(row);
+        if (lazy != null) lazy.pin(br);
+        CellBlock block = blocks.get(blockKey(bc, br));
+        if (block == null) {
+            block = new CellBlock(bc, br);
+            blocks.add(blockKey(bc, br), block);
+        }
+        return block;
     }
 
     public Optional<Cell> findCell(Address addr) {
-        return Optional.ofNullable(cells.get(addr));
+        return findCell(addr.getColumn(), addr.getRow());
+    }
+
+    public Optional<Cell> findCell(int column, int row) {
+        CellBlock block = getBlock(column, row);
+        if (block == null) return Optional.empty();
+
+        int i = CellBlock.index(column, row);
+        Content content = block.content(i);
+        if (content == null) return Optional.empty();
+        return Optional.of(new Cell(content, block.value(i), block.hasValue(i)));
     }
 
+    /** Live view of all non-empty addresses (of a lazy sheet: the cells read so far). */
     public Set<Address> getUsedAddresses() {
-        return cells.keySet();
+        return new UsedAddresses();
+    }
+
+    /** Callback for {@link #forEachInRowOrder}; the cell is slot {@code index} of {@code block}. */
+    @FunctionalInterface
+    public interface CellVisitor {
+        void visit(CellBlock block, int index);
+    }
+
+    /**
+     * Visit every non-empty cell, row by row and left to right within a row.
+     * Only populated blocks are walked. The sheet must not be modified meanwhile.
+     * A lazy sheet is read completely first.
+     */
+    public void forEachInRowOrder(CellVisitor visitor) {
+        readAll();
+        Object[] values = blocks.valuesArray();
+        CellBlock[] sorted = new CellBlock[values.length];
+        for (int k = 0; k < values.length; k++) sorted[k] = (CellBlock) values[k];
+        Arrays.sort(sorted, Comparator.comparingInt(CellBlock::getBlockRow).thenComparingInt(CellBlock::getBlockCol));
+
+        int bandStart = 0;
+        while (bandStart < sorted.length) {
+            int bandEnd = bandStart;
+            int blockRow = sorted[bandStart].getBlockRow();
+            while (bandEnd < sorted.length && sorted[bandEnd].getBlockRow() == blockRow) bandEnd++;
+
+            for (int r = 0; r < CellBlock.ROWS; r++) {
+                for (int b = bandStart; b < bandEnd; b++) {
+                    CellBlock block = sorted[b];
+                    for (int c = 0; c < CellBlock.COLS; c++) {
+                        int i = (c << CellBlock.ROW_BITS) | r;
+                        if (block.kind(i) != CellBlock.EMPTY) visitor.visit(block, i);
+                    }
+                }
+            }
+            bandStart = bandEnd;
+        }
+    }
+
+    public DependencyGraph getDependencyGraph() {
+        return graph;
+    }
+
+    public RangeIndex getRangeIndex() {
+        return rangeIndex;
+    }
+
+    /** Formula templates shared by the cells of this sheet. */
+    public TemplateTable getTemplates() {
+        return templates;
+    }
+
+    /** Formula texts parsed for this sheet so far, by edits and by loading. */
+    public long getFormulasParsed() {
+        return templates.getParseCount() + mergedParses;
+    }
+
+    /**
+     * Number of calls so far that changed cells: each {@link #setRawContent},
+     * {@link #setRawContents} and {@link #merge} counts once. Lets an owner of the sheet
+     * tell whether anyone else changed it in the meantime.
+     */
+    public long getEditCount() {
+        return editCount.get();
+    }
+
+    /**
+     * Store raw content and update the dependency graph.
+     * Cached values of the cell and all its transitive dependents are invalidated.
+     * Empty content removes the cell.
+     *
+     * @return the invalidated cells in topological order (ready for recalculation)
+     */
+    public List<Address> setRawContent(Address addr, String raw) {
+        store(addr, parse(addr, raw));
+        editCount.incrementAndGet();
+        return invalidate(List.of(addr));
+    }
+
+    /**
+     * Apply several edits as one. Every content is parsed before anything changes, so a
+     * bad formula rejects the whole batch; then all cells are stored and the cells to
+     * recalculate are collected in one traversal from all edited cells.
+     *
+     * @return the invalidated cells of the whole batch in topological order
+     */
+    public List<Address> setRawContents(Map<Address, String> edits) {
+        Address[] cells = edits.keySet().toArray(new Address[0]);
+        Content[] contents = new Content[cells.length];
+        for (int k = 0; k < cells.length; k++) contents[k] = parse(cells[k], edits.get(cells[k]));
+
+        for (int k = 0; k < cells.length; k++) store(cells[k], contents[k]);
+        editCount.incrementAndGet();
+        return invalidate(Arrays.asList(cells));
+    }
+
+    private Content parse(Address addr, String raw) {
+        return raw != null && raw.startsWith("=")
+                ? new FormulaContent(templates.intern(raw.substring(1), addr.getColumn(), addr.getRow()),
+                        addr.getColumn(), addr.getRow())
+                : ContentParser.parse(raw);
+    }
+
+    // put one cell and update its graph edges (no invalidation)
+    private void store(Address addr, Content content) {
+        int col = addr.getColumn();
+        int row = addr.getRow();
+        int i = CellBlock.index(col, row);
+
+        BlockTable.Stripe stripe = blocks.stripe(CellBlock.blockRow(row));
+        synchronized (stripe) {
+            CellBlock block = ensureBlock(col, row);
+
+            int before = block.size();
+            block.put(i, content);
+            stripe.cells += block.size() - before;
+            if (block.size() == 0) {
+                blocks.remove(blockKey(block.getBlockCol(), block.getBlockRow()));
+            }
+
+            // still under the stripe lock: edges change in the order the cell does
+            if (content instanceof FormulaContent fc) {
+                graph.setFormula(addr, fc.getTemplate().getBody());
+            } else {
+                graph.clear(addr);
+            }
+        }
+    }
+
+    // invalidate the edited cells and everything depending on them; returns them in topological order
+    private List<Address> invalidate(Collection<Address> edited) {
+        List<Address> dirty = graph.dirtyOrder(edited);
+        for (Address a : dirty) rangeIndex.invalidate(a.getColumn(), a.getRow());
+        for (Address a : dirty) {
+            int br = CellBlock.blockRow(a.getRow());
+            BlockTable.Stripe stripe = blocks.stripe(br);
+            synchronized (stripe) {
+                // no lookup through getBlock: a band that is not in memory has nothing cached
+                CellBlock b = stripe.blocks.get(blockKey(CellBlock.blockCol(a.getColumn()), br));
+                if (b != null) b.invalidate(CellBlock.index(a.getColumn(), a.getRow()));
+            }
+        }
+        return dirty;
     }
 
-    public void setRawContent(Address addr, String raw) {
-        Content content = ContentParser.parse(raw);
-        ensureCell(addr).setContent(content);
+    /**
+     * Add all cells of the fragments, in order, replacing cells at the same addresses (bulk load).
+     * Nothing is recalculated: merged formulas keep the values set in the fragment (if any),
+     * but if the sheet already had cells, every cached formula value is dropped. Fragments must not be used afterwards.
+     */
+    public void merge(SheetFragment... fragments) {
+        if (lazy != null) throw new IllegalStateException("Cannot merge into a lazily loaded sheet");
+        boolean wasEmpty = blocks.cellCount() == 0;
+        editCount.incrementAndGet();
+        for (SheetFragment fragment : fragments) {
+            mergeBlocks(fragment);
+        }
+        if (!wasEmpty) {
+            blocks.forEachValue(b -> {
+                for (int i = 0; i < CellBlock.SIZE; i++) b.invalidate(i);
+            });
+            // formula columns outside the merged blocks changed too
+            rangeIndex.invalidateAll();
+            // replaced formulas may have broken flagged cycles; new ones are found on evaluation
+            for (Address a : List.copyOf(graph.getCyclicCells())) graph.findCycles(a);
+        }
+    }
+
+    private void mergeBlocks(SheetFragment fragment) {
+        mergedParses += fragment.parseCount();
+        for (Object o : fragment.blocks().valuesArray()) {
+            CellBlock src = (CellBlock) o;
+            long key = blockKey(src.getBlockCol(), src.getBlockRow());
+            CellBlock dst = blocks.get(key);
+            if (dst == null) {
+                blocks.add(key, src);
+                dst = src;
+            }
+
+            for (int i = 0; i < CellBlock.SIZE; i++) {
+                byte kind = src.kind(i);
+                if (kind == CellBlock.EMPTY) continue;
+
+                Address addr = new Address(dst.columnOf(i), dst.rowOf(i));
+                if (dst != src) {
+                    int before = dst.size();
+                    if (dst.kind(i) == CellBlock.FORMULA && kind != CellBlock.FORMULA) graph.clear(addr);
+                    dst.copy(src, i);
+                    blocks.stripe(dst.getBlockRow()).cells += dst.size() - before;
+                }
+                if (kind == CellBlock.FORMULA) {
+                    FormulaTemplate t = templates.adopt(dst.template(i));
+                    dst.replaceTemplate(i, t);
+                    graph.setFormula(addr, t.getBody());
+                }
+            }
+
+            int firstCol = src.getBlockCol() * CellBlock.COLS + 1;
+            int firstRow = src.getBlockRow() * CellBlock.ROWS + 1;
+            for (int c = firstCol; c < firstCol + CellBlock.COLS; c++) rangeIndex.invalidate(c, firstRow);
+        }
+    }
+
+    /**
+     * Read cells from {@code source} on first access instead of up front: a band of rows is
+     * read when a lookup or an evaluation first reaches it. At most {@code cachedBands}
+     * unedited bands are kept; the least recently used ones are dropped and read again when
+     * needed. Edited bands stay in memory, and so do the bands an evaluation reads until it
+     * is done (see {@link #holdBands}). Lazy sheets are not thread-safe, even for reads.
+     *
+     * @throws IllegalStateException if the sheet already has cells or a source
+     */
+    public void attach(RowSource source, int cachedBands) {
+        if (blocks.cellCount() != 0 || lazy != null) throw new IllegalStateException("Sheet is not empty");
+        if (cachedBands < 1) throw new IllegalArgumentException("cachedBands must be positive");
+        lazy = new LazyBands(source, cachedBands);
+    }
+
+    /** Whether cells are read on demand (see {@link #attach}). */
+    public boolean isLazy() {
+        return lazy != null;
+    }
+
+    /**
+     * Keep every band of a lazy sheet that is read from now on in memory until the matching
+     * {@link #releaseBands}, so values computed on them are not dropped halfway through
+     * an evaluation; calls nest. No-op on other sheets.
+     */
+    public void holdBands() {
+        if (lazy != null) lazy.holds++;
+    }
+
+    /** End a {@link #holdBands}; the bands beyond the capacity are dropped once nothing holds them. */
+    public void releaseBands() {
+        if (lazy != null && --lazy.holds == 0) lazy.evict();
+    }
+
+    /** Read every band of a lazy sheet and keep them all in memory; no-op otherwise. */
+    public void readAll() {
+        if (lazy != null) lazy.readAll();
+    }
+
+    /**
+     * Publish the cells and values as they are now as a new {@link SheetVersion}, for
+     * readers on other threads. Blocks changed since the previous version are copied, the
+     * others are shared with it, as are the block maps of stripes where nothing changed;
+     * so publishing after an edit costs the blocks of the stripes it touched, not the
+     * sheet. Called by the (single) writing thread, normally once its edits are
+     * recalculated: formulas still stale are published without a value.
+     */
+    public SheetVersion publish() {
+        if (lazy != null) throw new IllegalStateException("Versions of a lazily loaded sheet cannot be published");
+        SheetVersion last = version;
+        LongObjectMap<CellBlock>[] frozen = SheetVersion.newStripes();
+        for (int s = 0; s < BlockTable.STRIPES; s++) {
+            BlockTable.Stripe stripe = blocks.stripeAt(s);
+            LongObjectMap<CellBlock> before = last.stripe(s);
+            if (!stripe.changed) {
+                frozen[s] = before;
+                continue;
+            }
+            LongObjectMap<CellBlock> map = new LongObjectMap<>(stripe.blocks.size());
+            stripe.blocks.forEachValue(block -> {
+                long key = blockKey(block.getBlockCol(), block.getBlockRow());
+                CellBlock copy = block.isChanged() ? null : before.get(key);
+                map.put(key, copy != null ? copy : block.freeze());
+            });
+            stripe.changed = false;
+            frozen[s] = map;
+        }
+        version = new SheetVersion(last.getNumber() + 1, frozen, blocks.cellCount());
+        return version;
+    }
+
+    /** The last published version (an empty version 0 before the first); safe from any thread. */
+    public SheetVersion currentVersion() {
+        return version;
     }
 
     public String getRawContent(Address addr) {
-        return findCell(addr)
-                .map(Cell::getContent)
-                .map(Content::raw)
-                .orElse("");
+        return getRawContent(addr.getColumn(), addr.getRow());
+    }
+
+    public String getRawContent(int column, int row) {
+        CellBlock block = getBlock(column, row);
+        if (block == null) return "";
+        Content content = block.content(CellBlock.index(column, row));
+        return content == null ? "" : content.raw();
+    }
+
+    /**
+     * Bands of a lazy sheet that are in memory. Unedited bands are kept in LRU order and
+     * dropped beyond the capacity; edited ones are pinned. Dropping a band keeps the graph
+     * entries of its formulas, so edits still reach (and invalidate) the cached values that
+     * were computed from them.
+     */
+    private final class LazyBands {
+        private final RowSource source;
+        private int capacity;
+
+        private final BitSet loaded = new BitSet();
+        private final BitSet pinned = new BitSet();
+        // unedited bands in memory, least recently used first -> keys of their blocks
+        private final LinkedHashMap<Integer, long[]> recent = new LinkedHashMap<>(16, 0.75f, true);
+
+        // band of the previous lookup: most lookups stay in the same band
+        private int last = -1;
+
+        // open holdBands() calls; nothing is dropped while > 0
+        int holds;
+
+        LazyBands(RowSource source, int capacity) {
+            this.source = source;
+            this.capacity = capacity;
+        }
+
+        void touch(int band) {
+            if (band == last) return;
+            if (loaded.get(band)) {
+                recent.get(band);
+            } else {
+                recent.put(band, read(band));
+                evict();
+            }
+            last = band;
+        }
+
+        void pin(int band) {
+            if (pinned.get(band)) return;
+            touch(band);
+            recent.remove(band);
+            pinned.set(band);
+        }
+
+        void readAll() {
+            capacity = Integer.MAX_VALUE;
+            for (int b = 0, n = source.bandCount(); b < n; b++) touch(b);
+        }
+
+        private long[] read(int band) {
+            SheetFragment fragment = source.readBand(band);
+            Object[] read = fragment.blocks().valuesArray();
+            long[] keys = new long[read.length];
+            for (int k = 0; k < read.length; k++) {
+                CellBlock b = (CellBlock) read[k];
+                keys[k] = blockKey(b.getBlockCol(), b.getBlockRow());
+            }
+            mergeBlocks(fragment);
+            loaded.set(band);
+            return keys;
+        }
+
+        private void evict() {
+            if (holds > 0) return;
+            Iterator<Map.Entry<Integer, long[]>> it = recent.entrySet().iterator();
+            while (recent.size() > capacity) {
+                Map.Entry<Integer, long[]> eldest = it.next();
+                it.remove();
+                for (long key : eldest.getValue()) {
+                    // whoever still holds the block (e.g. a range scan) keeps a consistent copy
+                    blocks.remove(key);
+                }
+                loaded.clear(eldest.getKey());
+            }
+        }
+    }
+
+    private final class UsedAddresses extends AbstractSet<Address> {
+
+        @Override
+        public int size() {
+            return blocks.cellCount();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof Address a)) return false;
+            CellBlock block = getBlock(a.getColumn(), a.getRow());
+            return block != null && block.kind(CellBlock.index(a.getColumn(), a.getRow())) != CellBlock.EMPTY;
+        }
+
+        @Override
+        public Iterator<Address> iterator() {
+            Object[] snapshot = blocks.valuesArray();
+            return new Iterator<>() {
+                int next;
+                CellBlock block;
+                int index = CellBlock.SIZE;
+
+                private void advance() {
+                    while (true) {
+                        if (block != null) {
+                            while (index < CellBlock.SIZE && block.kind(index) == CellBlock.EMPTY) index++;
+                            if (index < CellBlock.SIZE) return;
+                        }
+                        if (next == snapshot.length) { block = null; return; }
+                        block = (CellBlock) snapshot[next++];
+                        index = 0;
+                    }
+                }
+
+                @Override
+                public boolean hasNext() {
+                    advance();
+                    return block != null;
+                }
+
+                @Override
+                public Address next() {
+                    if (!hasNext()) throw new NoSuchElementException();
+                    Address a = new Address(block.columnOf(index), block.rowOf(index));
+                    index++;
+                    return a;
+                }
+            };
+        }
     }
-}
\ No newline at end of file
+}
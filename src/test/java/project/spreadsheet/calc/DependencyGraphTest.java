@@ -0,0 +1,106 @@
+package project.spreadsheet.calc;
+
+import org.junit.jupiter.api.Test;
+import project.spreadsheet.formula.EvalContext;
+import project.spreadsheet.sheet.Address;
+import project.spreadsheet.sheet.SheetFragment;
+import project.spreadsheet.sheet.Spreadsheet;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DependencyGraphTest {
+
+    @Test
+    void dependentsComeFromCellRefsAndRanges() {
+        Spreadsheet sheet = new Spreadsheet();
+        sheet.setRawContent(Address.parse("B1"), "=A1+1");
+        sheet.setRawContent(Address.parse("C1"), "=SUM(A1:A3)");
+
+        DependencyGraph g = sheet.getDependencyGraph();
+        assertEquals(2, g.getDependents(Address.parse("A1")).size());
+        assertEquals(1, g.getDependents(Address.parse("A2")).size());
+        assertTrue(g.getDependents(Address.parse("A4")).isEmpty());
+    }
+
+    @Test
+    void dirtyOrderIsTopological() {
+        Spreadsheet sheet = new Spreadsheet();
+        sheet.setRawContent(Address.parse("A1"), "1");
+        sheet.setRawContent(Address.parse("C1"), "=B1*2");
+        sheet.setRawContent(Address.parse("B1"), "=A1+1");
+        sheet.setRawContent(Address.parse("D1"), "=B1+C1");
+
+        List<Address> order = sheet.setRawContent(Address.parse("A1"), "5");
+        assertEquals(Address.parse("A1"), order.get(0));
+        assertTrue(order.indexOf(Address.parse("B1")) < order.indexOf(Address.parse("C1")));
+        assertTrue(order.indexOf(Address.parse("C1")) < order.indexOf(Address.parse("D1")));
+    }
+
+    @Test
+    void editInvalidatesOnlyDependents() {
+        Spreadsheet sheet = new Spreadsheet();
+        sheet.setRawContent(Address.parse("A1"), "1");
+        sheet.setRawContent(Address.parse("A2"), "=A1*10");
+        sheet.setRawContent(Address.parse("B2"), "=7");
+
+        EvalContext ctx = new EvalContext(sheet);
+        assertEquals(10.0, ctx.getCellValue(Address.parse("A2")));
+        assertEquals(7.0, ctx.getCellValue(Address.parse("B2")));
+
+        sheet.setRawContent(Address.parse("A1"), "3");
+        assertFalse(sheet.findCell(Address.parse("A2")).get().hasValue());
+        assertTrue(sheet.findCell(Address.parse("B2")).get().hasValue());
+        assertEquals(30.0, new EvalContext(sheet).getCellValue(Address.parse("A2")));
+    }
+
+    @Test
+    void replacingFormulaDropsOldEdges() {
+        Spreadsheet sheet = new Spreadsheet();
+        sheet.setRawContent(Address.parse("B1"), "=A1");
+        sheet.setRawContent(Address.parse("B1"), "42");
+
+        assertTrue(sheet.getDependencyGraph().getDependents(Address.parse("A1")).isEmpty());
+    }
+
+    @Test
+    void editsFlagAndUnflagCycles() {
+        Spreadsheet sheet = new Spreadsheet();
+        DependencyGraph g = sheet.getDependencyGraph();
+        sheet.setRawContent(Address.parse("A1"), "=C1+1");
+        sheet.setRawContent(Address.parse("B1"), "=A1*2");
+        sheet.setRawContent(Address.parse("D1"), "=B1");
+        assertTrue(g.getCyclicCells().isEmpty());
+
+        // closes A1 -> B1 -> C1 -> A1; D1 only reads the cycle
+        sheet.setRawContent(Address.parse("C1"), "=SUM(B1:B1)");
+        assertEquals(Set.of(Address.parse("A1"), Address.parse("B1"), Address.parse("C1")), g.getCyclicCells());
+
+        sheet.setRawContent(Address.parse("E1"), "=E1");
+        assertTrue(g.isCyclic(Address.parse("E1")));
+
+        // breaking one edge clears the whole cycle
+        sheet.setRawContent(Address.parse("A1"), "5");
+        assertEquals(Set.of(Address.parse("E1")), g.getCyclicCells());
+        assertEquals(10.0, new EvalContext(sheet).getCellValue(Address.parse("D1")));
+    }
+
+    @Test
+    void loadedCyclesAreFlaggedOnEvaluation() {
+        Spreadsheet sheet = new Spreadsheet();
+        SheetFragment fragment = new SheetFragment();
+        fragment.setFormula(1, 1, "B1+1");
+        fragment.setFormula(2, 1, "A1+1");
+        fragment.setFormula(3, 1, "A1");
+        sheet.merge(fragment);
+        assertTrue(sheet.getDependencyGraph().getCyclicCells().isEmpty());
+
+        assertThrows(IllegalStateException.class, () -> new EvalContext(sheet).getCellValue(Address.parse("C1")));
+        assertEquals(Set.of(Address.parse("A1"), Address.parse("B1")), sheet.getDependencyGraph().getCyclicCells());
+    }
+}
@@ -0,0 +1,204 @@
+package project.spreadsheet.calc;
+
+import org.junit.jupiter.api.Test;
+import project.spreadsheet.formula.Aggregator;
+import project.spreadsheet.formula.Aggregators;
+import project.spreadsheet.formula.EvalContext;
+import project.spreadsheet.formula.Expr;
+import project.spreadsheet.parser.Parser;
+import project.spreadsheet.sheet.Address;
+import project.spreadsheet.sheet.SheetFragment;
+import project.spreadsheet.sheet.Spreadsheet;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RangeIndexTest {
+
+    private static Spreadsheet column(int rows) {
+        Spreadsheet sheet = new Spreadsheet();
+        for (int row = 1; row <= rows; row++) {
+            sheet.setRawContent(new Address(1, row), String.valueOf(row % 97));
+        }
+        return sheet;
+    }
+
+    private static double eval(Spreadsheet sheet, String formula) {
+        Expr e = new Parser().parse(formula);
+        return e.eval(new EvalContext(sheet));
+    }
+
+    private static double scanned(Spreadsheet sheet, String formula) {
+        Expr e = new Parser().parse(formula);
+        return e.eval(new EvalContext(sheet, false));
+    }
+
+    @Test
+    void columnBecomesIndexedWhenHot() {
+        Spreadsheet sheet = column(2000);
+        for (int i = 0; i < RangeIndex.HOT_QUERIES; i++) {
+            assertFalse(sheet.getRangeIndex().isIndexed(1));
+            eval(sheet, "SUM(A1:A2000)");
+        }
+        assertTrue(sheet.getRangeIndex().isIndexed(1));
+        assertFalse(sheet.getRangeIndex().isIndexed(2));
+    }
+
+    @Test
+    void indexedAggregatesMatchScan() {
+        Spreadsheet sheet = column(3000);
+        sheet.setRawContent(Address.parse("A1500"), "-42");
+        String[] queries = {"SUM(A1:A3000)", "SUM(A7:A2900)", "MIN(A3:A2999)",
+                "MAX(A1:A3100)", "AVG(A129:A2048)", "MIN(A1:A4000)"};
+        for (int round = 0; round < RangeIndex.HOT_QUERIES + 1; round++) {
+            for (String q : queries) {
+                assertEquals(scanned(sheet, q), eval(sheet, q), q);
+            }
+        }
+        assertTrue(sheet.getRangeIndex().isIndexed(1));
+    }
+
+    @Test
+    void pointEditsUpdateIndex() {
+        Spreadsheet sheet = column(1000);
+        for (int i = 0; i < RangeIndex.HOT_QUERIES; i++) eval(sheet, "MAX(A1:A1000)");
+
+        sheet.setRawContent(Address.parse("A640"), "1000");
+        assertEquals(1000.0, eval(sheet, "MAX(A1:A1000)"));
+        sheet.setRawContent(Address.parse("A640"), "");
+        assertEquals(96.0, eval(sheet, "MAX(A1:A1000)"));
+    }
+
+    @Test
+    void formulaCellsInIndexedColumn() {
+        Spreadsheet sheet = column(1000);
+        sheet.setRawContent(Address.parse("B1"), "5");
+        sheet.setRawContent(Address.parse("A300"), "=B1*100");
+        for (int i = 0; i < RangeIndex.HOT_QUERIES; i++) {
+            assertEquals(500.0, eval(sheet, "MAX(A1:A1000)"));
+        }
+
+        sheet.setRawContent(Address.parse("B1"), "7");
+        assertEquals(700.0, eval(sheet, "MAX(A1:A1000)"));
+        assertEquals(700.0, eval(sheet, "MAX(A1:A1000)"));
+    }
+
+    // A and B: 4096 random doubles; C1:C64: copies of SUM(A1:A4096)
+    private static Spreadsheet randomColumns() {
+        Spreadsheet sheet = new Spreadsheet();
+        Random rnd = new Random(11);
+        for (int row = 1; row <= 4096; row++) {
+            sheet.setRawContent(new Address(1, row), Double.toString(rnd.nextDouble() * 1e6));
+            sheet.setRawContent(new Address(2, row), Double.toString(rnd.nextDouble() / 3));
+        }
+        for (int row = 1; row <= 64; row++) sheet.setRawContent(new Address(3, row), "=SUM(A1:A4096)");
+        return sheet;
+    }
+
+    @Test
+    void indexedSumsHaveTheBitsOfAScan() {
+        Spreadsheet sheet = randomColumns();
+        String[] queries = {"SUM(A1:A4096)", "SUM(A5:A3000)", "AVG(A100:B4000)", "SUM(A1:B512)"};
+        for (int round = 0; round < RangeIndex.HOT_QUERIES + 2; round++) {
+            for (String q : queries) {
+                assertEquals(scanned(sheet, q), eval(sheet, q), q);
+            }
+        }
+        assertTrue(sheet.getRangeIndex().isIndexed(1));
+    }
+
+    @Test
+    void serialAndParallelSumsAgree() {
+        // serial: the column gets indexed after a few copies; parallel workers never use the index
+        Spreadsheet sheet = randomColumns();
+        Spreadsheet parallel = randomColumns();
+        new Recalculator(sheet).recalculateAll();
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            new Recalculator(parallel).recalculateAll(pool);
+        } finally {
+            pool.shutdown();
+        }
+        double expected = sheet.findCell(new Address(3, 1)).get().getValue();
+        for (int row = 1; row <= 64; row++) {
+            assertEquals(expected, sheet.findCell(new Address(3, row)).get().getValue());
+            assertEquals(expected, parallel.findCell(new Address(3, row)).get().getValue());
+        }
+    }
+
+    @Test
+    void loadingIntoAPopulatedSheetRefreshesIndexedFormulaColumns() {
+        Spreadsheet sheet = new Spreadsheet();
+        for (int row = 1; row <= 1024; row++) {
+            sheet.setRawContent(new Address(1, row), "1");
+            sheet.setRawContent(new Address(10, row), "=A" + row + "*2");
+        }
+        sheet.setRawContent(Address.parse("K4"), "=SUM(J1:J1024)");
+        EvalContext ctx = new EvalContext(sheet);
+        for (int i = 0; i < RangeIndex.HOT_QUERIES + 1; i++) {
+            assertEquals(2048.0, eval(sheet, "SUM(J1:J1024)"));
+        }
+        assertTrue(sheet.getRangeIndex().isIndexed(10));
+        assertEquals(2048.0, ctx.getCellValue(Address.parse("K4")));
+
+        SheetFragment loaded = new SheetFragment();
+        for (int row = 1; row <= 1024; row++) loaded.setNumber(1, row, 5);
+        sheet.merge(loaded);
+
+        assertEquals(10.0, ctx.getCellValue(Address.parse("J1")));
+        assertEquals(10240.0, ctx.getCellValue(Address.parse("K4")));
+    }
+
+    @Test
+    void indexedQueriesReadLogarithmicallyManyNodes() {
+        Spreadsheet sheet = column(128 * 1024);
+        EvalContext ctx = new EvalContext(sheet);
+        for (int i = 0; i < RangeIndex.HOT_QUERIES; i++) ctx.foldRange(1, 1, 1, 128 * 1024, new Aggregators.Sum());
+        assertTrue(sheet.getRangeIndex().isIndexed(1));
+
+        int[] summaries = new int[1];
+        Aggregators.Sum sum = new Aggregators.Sum();
+        ctx.foldRange(1, 5, 1, 128 * 1000 + 3, new Aggregator() {
+            @Override
+            public void accept(double value) {
+                sum.accept(value);
+            }
+
+            @Override
+            public double result() {
+                return sum.result();
+            }
+
+            @Override
+            public boolean acceptsSummaries() {
+                return true;
+            }
+
+            @Override
+            public void acceptSummary(double s, double min, double max, long count) {
+                summaries[0]++;
+                sum.acceptSummary(s, min, max, count);
+            }
+        });
+        // two partial chunks plus at most two nodes per level of the 1024-chunk tree
+        assertTrue(summaries[0] <= 2 + 2 * 10, "summaries: " + summaries[0]);
+        assertEquals(scanned(sheet, "SUM(A5:A128003)"), sum.result());
+    }
+
+    @Test
+    void randomRangesHaveTheBitsOfAScan() {
+        Spreadsheet sheet = randomColumns();
+        Random rnd = new Random(5);
+        for (int i = 0; i < 200; i++) {
+            int r1 = 1 + rnd.nextInt(4096);
+            int r2 = r1 + rnd.nextInt(4097 - r1);
+            String q = "SUM(A" + r1 + ":B" + r2 + ")";
+            assertEquals(scanned(sheet, q), eval(sheet, q), q);
+        }
+        assertTrue(sheet.getRangeIndex().isIndexed(1));
+    }
+}
@@ -0,0 +1,97 @@
+package project.spreadsheet.calc;
+
+import org.junit.jupiter.api.Test;
+import project.spreadsheet.formula.EvalContext;
+import project.spreadsheet.sheet.Address;
+import project.spreadsheet.sheet.SheetFragment;
+import project.spreadsheet.sheet.Spreadsheet;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class RecalculatorTest {
+
+    // 20 independent columns, each a 50-row chain plus a SUM over the column
+    private static Spreadsheet columnsSheet() {
+        Spreadsheet sheet = new Spreadsheet();
+        for (int col = 1; col <= 20; col++) {
+            sheet.setRawContent(new Address(col, 1), String.valueOf(col));
+            for (int row = 2; row <= 50; row++) {
+                String prev = new Address(col, row - 1).toString();
+                sheet.setRawContent(new Address(col, row), "=" + prev + "*1.5+SIN(" + prev + ")");
+            }
+            sheet.setRawContent(new Address(col, 51),
+                    "=SUM(" + new Address(col, 1) + ":" + new Address(col, 50) + ")");
+        }
+        return sheet;
+    }
+
+    @Test
+    void levelsFollowChains() {
+        List<List<Address>> levels = new Recalculator(columnsSheet()).topologicalLevels();
+        assertEquals(50, levels.size());
+        assertEquals(20, levels.get(0).size());
+    }
+
+    @Test
+    void parallelMatchesSerial() {
+        Spreadsheet serial = columnsSheet();
+        Spreadsheet parallel = columnsSheet();
+
+        new Recalculator(serial).recalculateAll();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            new Recalculator(parallel).recalculateAll(pool);
+        } finally {
+            pool.shutdown();
+        }
+
+        for (Address a : serial.getUsedAddresses()) {
+            double expected = serial.findCell(a).get().getValue();
+            assertEquals(expected, parallel.findCell(a).get().getValue(), a.toString());
+        }
+    }
+
+    @Test
+    void cyclesStayStale() {
+        Spreadsheet sheet = new Spreadsheet();
+        sheet.setRawContent(Address.parse("A1"), "=B1");
+        sheet.setRawContent(Address.parse("B1"), "=A1");
+        sheet.setRawContent(Address.parse("C1"), "=A1+1");
+
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            new Recalculator(sheet).recalculateAll(pool);
+        } finally {
+            pool.shutdown();
+        }
+
+        assertFalse(sheet.findCell(Address.parse("C1")).get().hasValue());
+        assertThrows(IllegalStateException.class,
+                () -> new EvalContext(sheet).getCellValue(Address.parse("C1")));
+    }
+
+    @Test
+    void loadedCyclesAreFlaggedByParallelRecalculation() {
+        Spreadsheet sheet = new Spreadsheet();
+        SheetFragment fragment = new SheetFragment();
+        fragment.setFormula(1, 1, "B1+1");
+        fragment.setFormula(2, 1, "A1+1");
+        fragment.setFormula(3, 1, "A1");
+        sheet.merge(fragment);
+
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            new Recalculator(sheet).recalculateAll(pool);
+        } finally {
+            pool.shutdown();
+        }
+
+        assertEquals(Set.of(Address.parse("A1"), Address.parse("B1")), sheet.getDependencyGraph().getCyclicCells());
+    }
+}
@@ -5,6 +5,8 @@ import project.spreadsheet.parser.Parser;
 import project.spreadsheet.sheet.Spreadsheet;
 import project.spreadsheet.sheet.Address;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class ExprEvalTest {
 
@@ -124,4 +126,103 @@ public class ExprEvalTest {
         Expr expr = p.parse("SUM(A1:A3)");
         assertEquals(6.0, expr.eval(ctx));
     }
-}
\ No newline at end of file
+
+    @Test
+    void diamondReadsSharedPrecedentOnce() {
+        Spreadsheet sheet = new Spreadsheet();
+        sheet.setRawContent(Address.parse("A1"), "2");
+        sheet.setRawContent(Address.parse("B1"), "=A1*3");
+        sheet.setRawContent(Address.parse("C1"), "=B1+1");
+        sheet.setRawContent(Address.parse("C2"), "=B1+2");
+        sheet.setRawContent(Address.parse("D1"), "=C1+C2");
+
+        EvalContext ctx = new EvalContext(sheet);
+        assertEquals(15.0, ctx.getCellValue(Address.parse("D1")));
+        long misses = ctx.getCacheMisses();
+        assertEquals(4, misses); // formula cells only; A1 is a stored number
+        assertEquals(1, ctx.getCacheHits()); // second read of B1
+
+        assertEquals(15.0, ctx.getCellValue(Address.parse("D1")));
+        assertEquals(misses, ctx.getCacheMisses());
+        assertEquals(2, ctx.getCacheHits());
+
+        sheet.setRawContent(Address.parse("A1"), "4");
+        assertEquals(27.0, ctx.getCellValue(Address.parse("D1")));
+    }
+
+    @Test
+    void cellValuesComeFromStoredContent() {
+        Spreadsheet sheet = new Spreadsheet();
+        sheet.setRawContent(Address.parse("A1"), "1e3");
+        sheet.setRawContent(Address.parse("A2"), "hello");
+        sheet.setRawContent(Address.parse("A3"), "=A1+A2+A4");
+
+        EvalContext ctx = new EvalContext(sheet);
+        assertEquals(1000.0, ctx.getCellValue(Address.parse("A1")));
+        assertEquals(0.0, ctx.getCellValue(Address.parse("A2")));
+        assertEquals(1000.0, ctx.getCellValue(Address.parse("A3")));
+    }
+
+    @Test
+    void rangeAggregatesSpanBlocksAndCountEmptyCells() {
+        Spreadsheet sheet = new Spreadsheet();
+        // column A: 1..300 crosses block boundaries; B3 left empty on purpose
+        for (int row = 1; row <= 300; row++) {
+            sheet.setRawContent(new Address(1, row), String.valueOf(row));
+        }
+        sheet.setRawContent(Address.parse("B1"), "=A300*2");
+        sheet.setRawContent(Address.parse("B2"), "-5");
+
+        EvalContext ctx = new EvalContext(sheet);
+        Parser p = new Parser();
+        assertEquals(45150.0, p.parse("SUM(A1:A300)").eval(ctx));
+        assertEquals(600.0, p.parse("MAX(A1:B3)").eval(ctx));
+        assertEquals(-5.0, p.parse("MIN(A1:B3)").eval(ctx));
+        assertEquals((1 + 2 + 3 + 600 - 5) / 6.0, p.parse("AVG(A1:B3)").eval(ctx));
+        assertEquals(0.0, p.parse("MIN(C1:C9)").eval(ctx));
+    }
+
+    @Test
+    void chainsLongerThanTheStackEvaluate() {
+        Spreadsheet sheet = new Spreadsheet();
+        sheet.setRawContent(new Address(1, 1), "1");
+        for (int r = 2; r <= 200_000; r++) sheet.setRawContent(new Address(1, r), "=A" + (r - 1) + "+1");
+
+        EvalContext ctx = new EvalContext(sheet);
+        assertEquals(200_000.0, ctx.getCellValue(new Address(1, 200_000)));
+        assertEquals(200_000, ctx.getCacheMisses() + 1);   // each formula computed once
+    }
+
+    @Test
+    void chainsThroughRangesEvaluate() {
+        Spreadsheet sheet = new Spreadsheet();
+        sheet.setRawContent(new Address(1, 1), "1");
+        sheet.setRawContent(new Address(2, 1), "=A1");
+        for (int r = 2; r <= 50_000; r++) {
+            // A(r) = A(r-1) + 1 through a range; B(r) = 1 through a diamond on A
+            sheet.setRawContent(new Address(1, r), "=SUM(A" + (r - 1) + ":B" + (r - 1) + ")-B" + (r - 1) + "+1");
+            sheet.setRawContent(new Address(2, r), "=A" + r + "-A" + (r - 1));
+        }
+
+        EvalContext ctx = new EvalContext(sheet);
+        assertEquals(50_000.0, ctx.getCellValue(new Address(1, 50_000)));
+        assertEquals(1.0, ctx.getCellValue(new Address(2, 50_000)));
+    }
+
+    @Test
+    void deepCyclesAreReported() {
+        Spreadsheet sheet = new Spreadsheet();
+        sheet.setRawContent(new Address(1, 1), "=A1000+1");
+        for (int r = 2; r <= 1000; r++) sheet.setRawContent(new Address(1, r), "=A" + (r - 1) + "+1");
+        sheet.setRawContent(new Address(2, 1), "=A500");
+
+        EvalContext ctx = new EvalContext(sheet);
+        IllegalStateException ex = assertThrows(IllegalStateException.class,
+                () -> ctx.getCellValue(new Address(2, 1)));
+        assertTrue(ex.getMessage().startsWith("Circular reference detected"));
+
+        // nothing is left marked as in progress
+        sheet.setRawContent(new Address(1, 1), "7");
+        assertEquals(506.0, ctx.getCellValue(new Address(2, 1)));
+    }
+}
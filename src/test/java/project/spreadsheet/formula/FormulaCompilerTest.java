@@ -0,0 +1,46 @@
+package project.spreadsheet.formula;
+
+import org.junit.jupiter.api.Test;
+import project.spreadsheet.content.FormulaContent;
+import project.spreadsheet.parser.Parser;
+import project.spreadsheet.sheet.Address;
+import project.spreadsheet.sheet.Spreadsheet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FormulaCompilerTest {
+
+    @Test
+    void compiledMatchesInterpreted() {
+        Spreadsheet sheet = new Spreadsheet();
+        sheet.setRawContent(Address.parse("A1"), "3");
+        sheet.setRawContent(Address.parse("A2"), "4.5");
+        sheet.setRawContent(Address.parse("B1"), "=A1*A2");
+        EvalContext ctx = new EvalContext(sheet);
+
+        String[] formulas = {"1+2*3", "A1-A2/2", "2/A1", "(A1+1)*(A2-1)", "B1*10-MAX(A1:A2)",
+                "SIN(A1)+COS(2)", "10-A1-A2", "1/0"};
+        Parser p = new Parser();
+        for (String f : formulas) {
+            Expr ast = p.parse(f);
+            assertEquals(ast.eval(ctx), FormulaCompiler.compile(ast).eval(ctx), f);
+        }
+    }
+
+    @Test
+    void formulaIsCompiledOnceHot() {
+        EvalContext ctx = new EvalContext(new Spreadsheet());
+        FormulaContent f = new FormulaContent("=1+2*3");
+        int hot = FormulaCompiler.getThreshold();
+
+        for (int i = 1; i < hot; i++) {
+            assertEquals(7.0, f.eval(ctx));
+        }
+        assertFalse(f.isCompiled());
+        assertEquals(7.0, f.eval(ctx));
+        assertTrue(f.isCompiled());
+        assertEquals(7.0, f.eval(ctx));
+    }
+}
@@ -0,0 +1,53 @@
+package project.spreadsheet.formula;
+
+import org.junit.jupiter.api.Test;
+import project.spreadsheet.parser.Parser;
+import project.spreadsheet.sheet.Address;
+import project.spreadsheet.sheet.Spreadsheet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class FunctionRegistryTest {
+
+    @Test
+    void unknownFunctionFailsAtParseTime() {
+        assertThrows(IllegalArgumentException.class, () -> new Parser().parse("NOPE(1)"));
+    }
+
+    @Test
+    void arityAndRangeModeAreChecked() {
+        Parser p = new Parser();
+        assertThrows(IllegalArgumentException.class, () -> p.parse("SIN(1, 2)"));
+        assertThrows(IllegalArgumentException.class, () -> p.parse("COS()"));
+        assertThrows(IllegalArgumentException.class, () -> p.parse("SIN(A1:A3)"));
+    }
+
+    @Test
+    void functionIsBoundWhenParsed() {
+        FuncCall call = (FuncCall) new Parser(false).parse("sum(A1:A2, 3)");
+        assertSame(FunctionRegistry.standard().resolve("SUM"), call.getFunction());
+    }
+
+    @Test
+    void customFunctionsCanBeRegistered() {
+        FunctionRegistry registry = new FunctionRegistry().registerBuiltins();
+        registry.register(FormulaFunction.binary("HYPOT", Math::hypot));
+        registry.register(FormulaFunction.aggregate("COUNT", () -> new Aggregator() {
+            private long n;
+            public void accept(double value) { n++; }
+            public double result() { return n; }
+        }));
+
+        Spreadsheet sheet = new Spreadsheet();
+        sheet.setRawContent(Address.parse("A1"), "3");
+        sheet.setRawContent(Address.parse("A2"), "4");
+        EvalContext ctx = new EvalContext(sheet);
+
+        Parser p = new Parser(registry, true);
+        assertEquals(5.0, p.parse("HYPOT(A1, A2)").eval(ctx));
+        assertEquals(7.0, p.parse("COUNT(A1:B3, 1)").eval(ctx));
+        assertThrows(IllegalArgumentException.class, () -> new Parser().parse("HYPOT(1, 2)"));
+    }
+}
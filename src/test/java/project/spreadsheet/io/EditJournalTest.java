@@ -0,0 +1,205 @@
+package project.spreadsheet.io;
+
+import org.junit.jupiter.api.Test;
+import project.spreadsheet.controller.SpreadsheetController;
+import project.spreadsheet.sheet.Address;
+import project.spreadsheet.sheet.Spreadsheet;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class EditJournalTest {
+
+    @Test
+    void replaysCompleteRecordsAndDropsTornTail() throws IOException {
+        Path dir = Files.createTempDirectory("journal");
+        Path base = dir.resolve("sheet.s2v");
+        Path file = EditJournal.pathFor(base);
+        try {
+            Files.writeString(base, "1\n");
+            try (EditJournal j = new EditJournal(base, 0, 2)) {
+                j.append(Address.parse("A1"), "1");
+                j.append(Address.parse("B2"), "=A1*2");
+                j.append(Address.parse("C3"), "grüße");
+            }
+            long full = Files.size(file);
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                ch.truncate(full - 3); // crash in the middle of the last record
+            }
+
+            List<String> seen = new ArrayList<>();
+            long valid = EditJournal.replay(base, (a, raw) -> seen.add(a + "=" + raw));
+            assertEquals(List.of("A1=1", "B2==A1*2"), seen);
+
+            try (EditJournal j = new EditJournal(base, valid, 2)) {
+                assertEquals(valid, j.size());
+                j.append(Address.parse("D4"), "x");
+            }
+            seen.clear();
+            EditJournal.replay(base, (a, raw) -> seen.add(a + "=" + raw));
+            assertEquals(List.of("A1=1", "B2==A1*2", "D4=x"), seen);
+        } finally {
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(base);
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    void journalOfAnotherBaseIsNotReplayed() throws IOException {
+        Path dir = Files.createTempDirectory("journal");
+        Path base = dir.resolve("sheet.s2v");
+        Path file = EditJournal.pathFor(base);
+        try {
+            Files.writeString(base, "1\n");
+            try (EditJournal j = new EditJournal(base, 0, 1)) {
+                j.append(Address.parse("A1"), "7");
+            }
+            // the base is rewritten by something else
+            Files.writeString(base, "1;2\n");
+
+            List<String> seen = new ArrayList<>();
+            assertEquals(0, EditJournal.replay(base, (a, raw) -> seen.add(a + "=" + raw)));
+            assertTrue(seen.isEmpty());
+
+            SpreadsheetController c = controller();
+            c.load(base);
+            assertEquals(1.0, c.getCellValue("A1"));
+            c.setCellContent("B1", "3");
+            c.close();
+            seen.clear();
+            EditJournal.replay(base, (a, raw) -> seen.add(a + "=" + raw));
+            assertEquals(List.of("B1=3"), seen);
+        } finally {
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(base);
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    void loadingWritesNothing() throws IOException {
+        Path dir = Files.createTempDirectory("journal");
+        Path base = dir.resolve("sheet.s2v");
+        try {
+            Files.writeString(base, "1;=A1*2\n");
+            SpreadsheetController c = controller();
+            c.load(base);
+            c.close();
+            assertEquals(2.0, c.getCellValue("B1"));
+            assertFalse(Files.exists(EditJournal.pathFor(base)));
+        } finally {
+            Files.deleteIfExists(base);
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    void saveAppendsToJournalAndCompacts() throws IOException {
+        Path dir = Files.createTempDirectory("journal");
+        Path base = dir.resolve("sheet.s2v");
+        Path journal = EditJournal.pathFor(base);
+        try {
+            SpreadsheetController c = controller();
+            c.setCellContent("A1", "2");
+            c.save(base);
+            String written = Files.readString(base);
+
+            c.setCellContent("A2", "=A1*3");
+            c.setCellContent("A1", "5");
+            c.save(base);
+            assertEquals(written, Files.readString(base)); // only the journal grew
+            assertTrue(Files.size(journal) > 0);
+            c.close();
+
+            SpreadsheetController reopened = controller();
+            reopened.load(base);
+            assertEquals(15.0, reopened.getCellValue("A2"));
+
+            reopened.setJournalCompactionThreshold(1);
+            reopened.setCellContent("B1", "=A2+1");
+            reopened.save(base);
+            assertFalse(Files.exists(journal));   // emptied: no journal until the next edit
+            reopened.close();
+
+            SpreadsheetController compacted = controller();
+            compacted.load(base);
+            assertEquals(16.0, compacted.getCellValue("B1"));
+            assertEquals("=A1*3", compacted.getCellContent("A2"));
+            compacted.close();
+        } finally {
+            Files.deleteIfExists(journal);
+            Files.deleteIfExists(base);
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    void loadingIntoAPopulatedSheetSavesEverything() throws IOException {
+        Path dir = Files.createTempDirectory("journal");
+        Path a = dir.resolve("a.s2v");
+        Path b = dir.resolve("b.s2v");
+        try {
+            Files.writeString(a, "1\n");
+            Files.writeString(b, ";2\n");
+            SpreadsheetController c = controller();
+            c.load(a);
+            c.setCellContent("C1", "3");
+            c.load(b);
+            c.save(b);
+            c.close();
+
+            SpreadsheetController reopened = controller();
+            reopened.load(b);
+            assertEquals(1.0, reopened.getCellValue("A1"));
+            assertEquals(2.0, reopened.getCellValue("B1"));
+            assertEquals(3.0, reopened.getCellValue("C1"));
+            reopened.close();
+        } finally {
+            Files.deleteIfExists(EditJournal.pathFor(a));
+            Files.deleteIfExists(EditJournal.pathFor(b));
+            Files.deleteIfExists(a);
+            Files.deleteIfExists(b);
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    void editsBesideTheControllerAreSavedInFull() throws IOException {
+        Path dir = Files.createTempDirectory("journal");
+        Path base = dir.resolve("sheet.s2v");
+        try {
+            Files.writeString(base, "1\n");
+            Spreadsheet sheet = new Spreadsheet();
+            SpreadsheetController c = new SpreadsheetController(sheet, new S2VReader(), new S2VWriter());
+            c.load(base);
+            c.setCellContent("B1", "2");
+            sheet.setRawContent(Address.parse("C1"), "3");
+            c.save(base);
+            c.close();
+
+            SpreadsheetController reopened = controller();
+            reopened.load(base);
+            assertEquals(2.0, reopened.getCellValue("B1"));
+            assertEquals(3.0, reopened.getCellValue("C1"));
+            reopened.close();
+        } finally {
+            Files.deleteIfExists(EditJournal.pathFor(base));
+            Files.deleteIfExists(base);
+            Files.delete(dir);
+        }
+    }
+
+    private static SpreadsheetController controller() {
+        return new SpreadsheetController(new Spreadsheet(), new S2VReader(), new S2VWriter());
+    }
+}
@@ -0,0 +1,178 @@
+package project.spreadsheet.io;
+
+import org.junit.jupiter.api.Test;
+import project.spreadsheet.controller.SpreadsheetController;
+import project.spreadsheet.formula.EvalContext;
+import project.spreadsheet.sheet.Address;
+import project.spreadsheet.sheet.Spreadsheet;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class S2VReaderTest {
+
+    private static final String FILE = String.join("\n",
+            "1;2.5;-0.125;hello;=A1+B1",
+            "",
+            ";;12345678901234567;1e3;=SUM(A1,B1,C1)",
+            "grüße; spaced ;-;.5;=MAX(A1:C1)*2",
+            "3\r",
+            "=A5*2;;;;=E4+E3") + "\n" + "last;7";
+
+    @Test
+    void mappedChunksMatchLineByLineReading() throws IOException {
+        Path file = Files.createTempFile("s2v", ".s2v");
+        try {
+            Files.writeString(file, FILE, StandardCharsets.UTF_8);
+            Spreadsheet expected = new S2VReader().read(new StringReader(FILE));
+
+            // every chunk size from one byte to the whole file: lines split at every position
+            for (int chunk = 1; chunk <= FILE.length() + 1; chunk++) {
+                Spreadsheet actual = new S2VReader(ForkJoinPool.commonPool(), chunk).read(file);
+                assertSameCells(expected, actual, "chunk " + chunk);
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void loadedFormulasEvaluate() throws IOException {
+        Path file = Files.createTempFile("s2v", ".s2v");
+        try {
+            Files.writeString(file, FILE, StandardCharsets.UTF_8);
+            Spreadsheet sheet = new S2VReader(ForkJoinPool.commonPool(), 8).read(file);
+            EvalContext ctx = new EvalContext(sheet);
+            assertEquals(3.5, ctx.getCellValue(Address.parse("E1")));
+            assertEquals(5.0, ctx.getCellValue(Address.parse("E4")));
+            assertEquals(6.0, ctx.getCellValue(Address.parse("A6")));
+            assertEquals(8.375, ctx.getCellValue(Address.parse("E6")));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void lazySheetReadsBandsOnDemand() throws IOException {
+        // 1000 rows: A = row, B = running sum, C = SUM of the A column up to the row
+        StringBuilder sb = new StringBuilder();
+        for (int r = 1; r <= 1000; r++) {
+            sb.append(r).append(';').append(r == 1 ? "=A1" : "=B" + (r - 1) + "+A" + r)
+                    .append(";=SUM(A1:A").append(r).append(")\n");
+        }
+        Path file = Files.createTempFile("s2v", ".s2v");
+        try {
+            Files.writeString(file, sb, StandardCharsets.UTF_8);
+            Spreadsheet sheet = new Spreadsheet();
+            new S2VReader().openLazily(file, sheet, 256);
+            EvalContext ctx = new EvalContext(sheet);
+
+            assertEquals(0, sheet.getUsedAddresses().size());
+            assertEquals(50.0, ctx.getCellValue(Address.parse("A50")));
+            assertEquals(3 * 128, sheet.getUsedAddresses().size());
+
+            // reaches every band; only two stay in memory
+            assertEquals(500500.0, ctx.getCellValue(Address.parse("B1000")));
+            assertEquals(500500.0, ctx.getCellValue(Address.parse("C1000")));
+            assertTrue(sheet.getUsedAddresses().size() <= 2 * 3 * 128);
+
+            // edits are kept and reach dependents whose band was dropped meanwhile
+            sheet.setRawContent(Address.parse("A1"), "1001");
+            assertEquals(501500.0, ctx.getCellValue(Address.parse("B1000")));
+            assertEquals(500.0 * 501 / 2 + 1000, ctx.getCellValue(Address.parse("C500")));
+            assertEquals("1001.0", sheet.getRawContent(Address.parse("A1")));
+            assertEquals("=B499+A500", sheet.getRawContent(Address.parse("B500")));
+
+            Spreadsheet eager = new S2VReader().read(file);
+            eager.setRawContent(Address.parse("A1"), "1001");
+            sheet.readAll();
+            assertSameCells(eager, sheet, "lazy");
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void chainsAcrossBandsEvaluateWithOneCachedBand() throws IOException {
+        StringBuilder sb = new StringBuilder("1\n");
+        for (int r = 2; r <= 1000; r++) sb.append("=A").append(r - 1).append("+1\n");
+        Path file = Files.createTempFile("s2v", ".s2v");
+        try {
+            Files.writeString(file, sb, StandardCharsets.UTF_8);
+            Spreadsheet sheet = new Spreadsheet();
+            new S2VReader().openLazily(file, sheet, 128);
+            EvalContext ctx = new EvalContext(sheet);
+
+            assertEquals(300.0, ctx.getCellValue(Address.parse("A300")));
+            assertEquals(1000.0, ctx.getCellValue(Address.parse("A1000")));
+            // the bands the evaluation needed were dropped again afterwards
+            assertTrue(sheet.getUsedAddresses().size() <= 128);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void lazySheetsRecalculateSeriallyWithAPool() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int r = 1; r <= 1000; r++) sb.append(r).append(";=A").append(r).append("*2\n");
+        Path file = Files.createTempFile("s2v", ".s2v");
+        AtomicInteger workers = new AtomicInteger();
+        ForkJoinPool pool = new ForkJoinPool(4, p -> {
+            workers.incrementAndGet();
+            return ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+        }, null, false);
+        try {
+            Files.writeString(file, sb, StandardCharsets.UTF_8);
+            SpreadsheetController c = new SpreadsheetController(new Spreadsheet(), new S2VReader(), new S2VWriter());
+            c.setRecalculationPool(pool);
+            c.openLazily(file, 128);
+            assertEquals("500.0", c.getCellContent("A500"));   // its band is in, unevaluated
+            c.recalculateAll();
+            assertEquals(2000.0, c.getCellValue("B1000"));
+            assertEquals(2.0, c.getCellValue("B1"));
+            assertEquals(0, workers.get());
+            c.close();
+        } finally {
+            pool.shutdown();
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void lazyBandsMatchMappedReading() throws IOException {
+        Path file = Files.createTempFile("s2v", ".s2v");
+        try {
+            StringBuilder sb = new StringBuilder();
+            for (int k = 0; k < 60; k++) sb.append(FILE).append("\r\n");
+            Files.writeString(file, sb, StandardCharsets.UTF_8);
+
+            Spreadsheet lazy = new Spreadsheet();
+            new S2VReader().openLazily(file, lazy, 1);
+            lazy.readAll();
+            assertSameCells(new S2VReader().read(file), lazy, "lazy");
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static void assertSameCells(Spreadsheet expected, Spreadsheet actual, String msg) {
+        assertEquals(new HashSet<>(expected.getUsedAddresses()), new HashSet<>(actual.getUsedAddresses()), msg);
+        for (Address a : expected.getUsedAddresses()) {
+            assertEquals(expected.getRawContent(a), actual.getRawContent(a), msg + " " + a);
+            assertEquals(expected.findCell(a).get().getContent().getClass(),
+                    actual.findCell(a).get().getContent().getClass(), msg + " " + a);
+            assertEquals(expected.getDependencyGraph().getPrecedents(a),
+                    actual.getDependencyGraph().getPrecedents(a), msg + " " + a);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package project.spreadsheet.io;
+
+import org.junit.jupiter.api.Test;
+import project.spreadsheet.sheet.Address;
+import project.spreadsheet.sheet.Spreadsheet;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class S2VWriterTest {
+
+    private static final String NL = System.lineSeparator();
+
+    @Test
+    void writesRowsInOrderWithGaps() throws IOException {
+        Spreadsheet sheet = new Spreadsheet();
+        sheet.setRawContent(Address.parse("C2"), "=SUM(A1;B1)");
+        sheet.setRawContent(Address.parse("A2"), "hi");
+        sheet.setRawContent(Address.parse("J2"), "2.5");
+        sheet.setRawContent(Address.parse("B5"), "7");
+
+        StringWriter out = new StringWriter();
+        new S2VWriter().write(sheet, out);
+        assertEquals(NL + "hi;;=SUM(A1,B1);;;;;;;2.5" + NL + NL + NL + ";7.0" + NL, out.toString());
+    }
+
+    @Test
+    void farApartCellsRoundTrip() throws IOException {
+        Spreadsheet sheet = new Spreadsheet();
+        sheet.setRawContent(Address.parse("A1"), "1");
+        sheet.setRawContent(Address.parse("ZZ100000"), "=A1*2");
+        for (int r = 300; r < 700; r += 7) sheet.setRawContent(new Address(1 + r % 40, r), "x" + r);
+
+        StringWriter out = new StringWriter();
+        new S2VWriter().write(sheet, out);
+        Spreadsheet back = new S2VReader().read(new StringReader(out.toString()));
+
+        assertEquals(sheet.getUsedAddresses(), back.getUsedAddresses());
+        for (Address a : sheet.getUsedAddresses()) {
+            assertEquals(sheet.getRawContent(a), back.getRawContent(a), a.toString());
+        }
+    }
+
+    @Test
+    void emptySheetWritesNothing() throws IOException {
+        StringWriter out = new StringWriter();
+        new S2VWriter().write(new Spreadsheet(), out);
+        assertEquals("", out.toString());
+    }
+}
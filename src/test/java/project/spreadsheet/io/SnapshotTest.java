@@ -0,0 +1,154 @@
+package project.spreadsheet.io;
+
+import org.junit.jupiter.api.Test;
+import project.spreadsheet.controller.SpreadsheetController;
+import project.spreadsheet.formula.EvalContext;
+import project.spreadsheet.sheet.Address;
+import project.spreadsheet.sheet.Spreadsheet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SnapshotTest {
+
+    private static Spreadsheet sample() {
+        Spreadsheet sheet = new Spreadsheet();
+        for (int r = 1; r <= 300; r++) {
+            sheet.setRawContent(new Address(1, r), Integer.toString(r));
+            sheet.setRawContent(new Address(2, r), "=A" + r + "*2+A" + r + "*2");
+        }
+        sheet.setRawContent(Address.parse("C1"), "=SUM(B1:B300)/MAX(A1:A300)");
+        sheet.setRawContent(Address.parse("C2"), "=SIN(A1)+C1");
+        sheet.setRawContent(Address.parse("D1"), "grüße");
+        return sheet;
+    }
+
+    @Test
+    void opensWarmWithSameContent() throws IOException {
+        Spreadsheet sheet = sample();
+        EvalContext ctx = new EvalContext(sheet);
+        double c2 = ctx.getCellValue(Address.parse("C2"));
+        sheet.setRawContent(Address.parse("A300"), "301"); // leaves B300, C1, C2 stale
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new SnapshotWriter().write(sheet, bytes);
+        Spreadsheet back = new Spreadsheet();
+        new SnapshotReader().read(new ByteArrayInputStream(bytes.toByteArray()), back);
+
+        assertEquals(sheet.getUsedAddresses(), back.getUsedAddresses());
+        for (Address a : sheet.getUsedAddresses()) {
+            assertEquals(sheet.getRawContent(a), back.getRawContent(a), a.toString());
+            assertEquals(sheet.findCell(a).get().hasValue(), back.findCell(a).get().hasValue(), a.toString());
+        }
+        assertEquals(3, back.getTemplates().size()); // column B shares one template
+
+        EvalContext warm = new EvalContext(back);
+        assertEquals(4.0 * 299, warm.getCellValue(Address.parse("B299")));
+        assertEquals(0, warm.getCacheMisses());
+        assertEquals(4.0 * 301, warm.getCellValue(Address.parse("B300")));
+        assertEquals(new EvalContext(sheet).getCellValue(Address.parse("C2")), warm.getCellValue(Address.parse("C2")));
+        assertTrue(c2 != warm.getCellValue(Address.parse("C2")));
+
+        back.setRawContent(Address.parse("A1"), "10");
+        assertEquals(40.0, new EvalContext(back).getCellValue(Address.parse("B1")));
+    }
+
+    @Test
+    void controllerLoadsBothFormats() throws IOException {
+        Path snap = Files.createTempFile("sheet", ".s2vb");
+        Path text = Files.createTempFile("sheet", ".s2v");
+        try {
+            SpreadsheetController source = new SpreadsheetController(sample(), new S2VReader(), new S2VWriter());
+            source.saveSnapshot(snap);
+            source.save(text);
+            source.close();
+            assertTrue(SnapshotReader.isSnapshot(snap));
+            assertFalse(SnapshotReader.isSnapshot(text));
+
+            for (Path file : new Path[]{snap, text}) {
+                SpreadsheetController c = new SpreadsheetController(new Spreadsheet(), new S2VReader(), new S2VWriter());
+                c.load(file);
+                assertEquals(source.getCellValue("C2"), c.getCellValue("C2"), file.toString());
+                assertEquals("=A7*2+A7*2", c.getCellContent("B7"));
+                c.close();
+            }
+        } finally {
+            Files.delete(snap);
+            Files.delete(text);
+        }
+    }
+
+    @Test
+    void keepsTextsLongerThan64K() throws IOException {
+        Path snap = Files.createTempFile("sheet", ".s2vb");
+        try {
+            String text = "ü".repeat(70_000);
+            Spreadsheet sheet = new Spreadsheet();
+            sheet.setRawContent(Address.parse("A1"), text);
+            sheet.setRawContent(Address.parse("B1"), "=SIN(A1)+1");
+            SpreadsheetController c = new SpreadsheetController(sheet, new S2VReader(), new S2VWriter());
+            c.saveSnapshot(snap);
+            c.close();
+
+            SpreadsheetController back = new SpreadsheetController(new Spreadsheet(), new S2VReader(), new S2VWriter());
+            back.load(snap);
+            assertEquals(text, back.getCellContent("A1"));
+            assertEquals("=SIN(A1)+1", back.getCellContent("B1"));
+            back.close();
+        } finally {
+            Files.delete(snap);
+        }
+    }
+
+    @Test
+    void failedSaveKeepsTheFile() throws IOException {
+        Path snap = Files.createTempFile("sheet", ".s2vb");
+        Path tmp = snap.resolveSibling(snap.getFileName() + ".tmp");
+        try {
+            SpreadsheetController c = new SpreadsheetController(sample(), new S2VReader(), new S2VWriter());
+            c.saveSnapshot(snap);
+            byte[] saved = Files.readAllBytes(snap);
+            c.setCellContent("A1", "5");
+            Files.createDirectory(tmp);   // the snapshot cannot be written
+            assertThrows(IOException.class, () -> c.saveSnapshot(snap));
+            c.close();
+            assertArrayEquals(saved, Files.readAllBytes(snap));
+        } finally {
+            Files.deleteIfExists(tmp);
+            Files.delete(snap);
+        }
+    }
+
+    @Test
+    void textStartingLikeTheOldMagicIsText() throws IOException {
+        Path text = Files.createTempFile("sheet", ".s2v");
+        try {
+            Files.writeString(text, "S2VB;1\n2\n");
+            assertFalse(SnapshotReader.isSnapshot(text));
+            SpreadsheetController c = new SpreadsheetController(new Spreadsheet(), new S2VReader(), new S2VWriter());
+            c.load(text);
+            assertEquals("S2VB", c.getCellContent("A1"));
+            assertEquals(2.0, c.getCellValue("A2"));
+            c.close();
+        } finally {
+            Files.delete(text);
+        }
+    }
+
+    @Test
+    void rejectsOtherVersions() {
+        byte[] header = {(byte) 0x89, 0x53, 0x32, 0x56, 0, 0, 0, 99};
+        IOException ex = assertThrows(IOException.class,
+                () -> new SnapshotReader().read(new ByteArrayInputStream(header), new Spreadsheet()));
+        assertTrue(ex.getMessage().contains("99"));
+    }
+}
@@ -0,0 +1,151 @@
+package project.spreadsheet.metrics;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import project.spreadsheet.controller.SpreadsheetController;
+import project.spreadsheet.io.S2VReader;
+import project.spreadsheet.io.S2VWriter;
+import project.spreadsheet.sheet.Address;
+import project.spreadsheet.sheet.Spreadsheet;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MetricsTest {
+
+    private static SpreadsheetController controller() {
+        return new SpreadsheetController(new Spreadsheet(), new S2VReader(), new S2VWriter());
+    }
+
+    @Test
+    void countersAreKeptWithMetricsOff() {
+        SpreadsheetController ctrl = controller();
+        for (int r = 1; r <= 10; r++) ctrl.setCellContent("A" + r, Integer.toString(r));
+        ctrl.setCellContent("B1", "=SUM(A1:A10)");
+        ctrl.setCellContent("B2", "=B1*2");
+        ctrl.getCellValue("B2");
+
+        MetricsSnapshot m = ctrl.getMetrics();
+        assertEquals(2, m.getFormulasParsed());
+        assertEquals(2, m.getCellsEvaluated());
+        assertEquals(10, m.getRangeCellsScanned());
+        assertEquals(2, m.getCacheHits());   // B1 read by B2, then B2 itself
+        assertTrue(m.getTimings().isEmpty());
+        assertTrue(m.getExpensiveCells().isEmpty());
+    }
+
+    @Test
+    void parallelRecalculationIsCounted() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int r = 1; r <= 100; r++) sb.append(r).append(";=A").append(r).append("*2\n");
+        sb.append(";=SUM(B1:B100)\n");
+        Path file = Files.createTempFile("metrics", ".s2v");
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            Files.writeString(file, sb);
+            SpreadsheetController parallel = controller();
+            parallel.setRecalculationPool(pool);
+            parallel.load(file);
+            parallel.close();
+
+            MetricsSnapshot m = parallel.getMetrics();
+            assertEquals(101, m.getCellsEvaluated());
+            assertEquals(100, m.getRangeCellsScanned());
+            parallel.resetCacheStats();
+            assertEquals(0, parallel.getMetrics().getCellsEvaluated());
+        } finally {
+            pool.shutdown();
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void timingsAndExpensiveCellsWhileOn() {
+        SpreadsheetController ctrl = controller();
+        ctrl.setMetricsEnabled(true);
+        for (int r = 1; r <= 2000; r++) ctrl.setCellContent("A" + r, Integer.toString(r));
+        ctrl.setCellContent("B1", "=A1+1");
+        ctrl.setCellContent("C1", "=SUM(A1:A2000)+B1");
+        assertEquals(2001000.0 + 2, ctrl.getCellValue("C1"));
+
+        MetricsSnapshot m = ctrl.getMetrics();
+        assertEquals(2002, m.getTimings().get("setCellContent").getCount());
+        assertEquals(1, m.getTimings().get("getCellValue").getCount());
+        assertEquals(2, m.getTimings().get(EvalMetrics.CELL).getCount());
+
+        List<CellCost> top = m.getExpensiveCells();
+        assertEquals(2, top.size());
+        // the range scan is C1's own work; B1 is its cheap precedent
+        assertEquals(Address.parse("C1"), top.get(0).getAddress());
+
+        Map<String, Number> flat = m.toMap();
+        assertEquals(2L, flat.get("time.cell.count"));
+        assertTrue(flat.containsKey("time.setCellContent.p99_ns"));
+
+        ctrl.setMetricsEnabled(false);
+        assertTrue(ctrl.getMetrics().getTimings().isEmpty());
+    }
+
+    @Test
+    void histogramPercentilesAreBucketBounds() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (int i = 0; i < 99; i++) h.record(100);
+        h.record(1_000_000);
+
+        assertEquals(127, h.getPercentileNanos(0.5));
+        assertEquals(127, h.getPercentileNanos(0.99));
+        assertEquals(1_000_000, h.getPercentileNanos(1.0));
+        assertEquals(1_000_000, h.getMaxNanos());
+        assertEquals(100 * 99 + 1_000_000, h.getTotalNanos());
+    }
+
+    @Test
+    void slowRecalcsAndLoadsAreRecorded() throws IOException {
+        Path sheetFile = Files.createTempFile("metrics", ".s2v");
+        Path jfr = Files.createTempFile("metrics", ".jfr");
+        try (Recording recording = new Recording()) {
+            Files.writeString(sheetFile, "1;=A1*2\n");
+            recording.enable(SlowRecalcEvent.class).withThreshold(Duration.ZERO);
+            recording.enable(SlowLoadEvent.class).withThreshold(Duration.ZERO);
+            recording.start();
+
+            try (SpreadsheetController ctrl = controller()) {
+                ctrl.load(sheetFile);
+                ctrl.setCellContent("A1", "5");
+            }
+            recording.stop();
+            recording.dump(jfr);
+
+            List<RecordedEvent> events = RecordingFile.readAllEvents(jfr);
+            RecordedEvent load = events.stream()
+                    .filter(e -> e.getEventType().getName().equals("project.spreadsheet.SlowLoad"))
+                    .findFirst().orElseThrow();
+            assertEquals(2, load.getInt("cells"));
+            assertEquals(1L, load.getLong("formulasParsed"));
+
+            RecordedEvent edit = events.stream()
+                    .filter(e -> e.getEventType().getName().equals("project.spreadsheet.SlowRecalc"))
+                    .filter(e -> e.getString("operation").startsWith("edit"))
+                    .findFirst().orElseThrow();
+            assertEquals("edit A1", edit.getString("operation"));
+            assertEquals(2, edit.getInt("dirtyCells"));
+            assertEquals(1L, edit.getLong("cellsEvaluated"));
+            assertFalse(events.isEmpty());
+        } finally {
+            Files.deleteIfExists(sheetFile);
+            Files.deleteIfExists(jfr);
+            Files.deleteIfExists(sheetFile.resolveSibling(sheetFile.getFileName() + ".journal"));
+        }
+    }
+}
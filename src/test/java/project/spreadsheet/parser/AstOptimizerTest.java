@@ -0,0 +1,76 @@
+package project.spreadsheet.parser;
+
+import org.junit.jupiter.api.Test;
+import project.spreadsheet.formula.BinaryOp;
+import project.spreadsheet.formula.EvalContext;
+import project.spreadsheet.formula.Expr;
+import project.spreadsheet.formula.NumberLit;
+import project.spreadsheet.formula.SharedExpr;
+import project.spreadsheet.formula.SharedScope;
+import project.spreadsheet.sheet.Address;
+import project.spreadsheet.sheet.Spreadsheet;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AstOptimizerTest {
+
+    private static Spreadsheet sheet() {
+        Spreadsheet sheet = new Spreadsheet();
+        sheet.setRawContent(Address.parse("A1"), "4");
+        sheet.setRawContent(Address.parse("B1"), "-2.5");
+        return sheet;
+    }
+
+    @Test
+    void foldsConstants() {
+        Parser p = new Parser();
+        Expr e = p.parse("2*3+SIN(0)+COS(0)");
+        assertTrue(e instanceof NumberLit);
+        assertEquals(7.0, ((NumberLit) e).getValue());
+        assertEquals(5, p.getOptimizations().size()); // 2*3, SIN, COS and the two additions
+    }
+
+    @Test
+    void removesIdentities() {
+        Parser p = new Parser();
+        Expr e = p.parse("A1*1+0");
+        assertEquals("[identity (A1*1.0) -> A1, identity (A1+0.0) -> A1]", p.getOptimizations().toString());
+        assertEquals(4.0, e.eval(new EvalContext(sheet())));
+    }
+
+    @Test
+    void sharesRepeatedSubtrees() {
+        Parser p = new Parser();
+        Expr e = p.parse("2*3*A1+2*3*A1");
+
+        assertTrue(e instanceof SharedScope);
+        BinaryOp sum = (BinaryOp) ((SharedScope) e).getBody();
+        assertTrue(sum.getLeft() instanceof SharedExpr);
+        assertSame(sum.getLeft(), sum.getRight());
+        List<String> changes = p.getOptimizations();
+        assertEquals("share (6.0*A1) x2", changes.get(changes.size() - 1));
+        assertEquals(48.0, e.eval(new EvalContext(sheet())));
+    }
+
+    @Test
+    void optimizedAndPlainAgree() {
+        String[] formulas = {"A1*B1+A1*B1-(A1*B1)/2", "MAX(A1+1,A1+1,B1)*1", "SIN(A1)+SIN(A1)*SIN(A1)",
+                "(A1-0)/1+0*B1", "SUM(A1:B1)+SUM(A1:B1)"};
+        EvalContext ctx = new EvalContext(sheet());
+        for (String f : formulas) {
+            double plain = new Parser(false).parse(f).eval(ctx);
+            assertEquals(plain, new Parser().parse(f).eval(ctx), f);
+        }
+    }
+
+    @Test
+    void canBeSwitchedOff() {
+        Parser p = new Parser(false);
+        assertTrue(p.parse("2*3").getClass() == BinaryOp.class);
+        assertTrue(p.getOptimizations().isEmpty());
+    }
+}
@@ -0,0 +1,62 @@
+package project.spreadsheet.parser;
+
+import org.junit.jupiter.api.Test;
+import project.spreadsheet.formula.CellRef;
+import project.spreadsheet.formula.FunctionRegistry;
+import project.spreadsheet.sheet.Address;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ParserTest {
+
+    private static final String[] FORMULAS = {
+            "1", "2.5", ".5", "1+2*3", "(1+2)*3", "10-4-3", "100/10/5", "2*3-4/2+1",
+            "A1", "b12", "AA3+ZZ100", "A1*(B2-C3)/D4",
+            "SUM(A1:B3)", "sum(a1:a10, 4, C2*2)", "AVG(A1:A3)", "MIN(1,2,3)", "MAX(A1, SIN(B1))",
+            "COS(0)+SIN(A1*2)", "SUM(A1:A2)*SUM(B1:B2)", " 1 +  A1 * ( 2 ) ", "12345678901234567890",
+    };
+
+    @Test
+    void matchesShuntingYardParser() {
+        ShuntingYardParser reference = new ShuntingYardParser(FunctionRegistry.standard());
+        Parser parser = new Parser(false);
+        for (String f : FORMULAS) {
+            assertEquals(AstOptimizer.key(reference.parse(f)), AstOptimizer.key(parser.parse(f)), f);
+        }
+    }
+
+    @Test
+    void decodesCellRefsInPlace() {
+        CellRef ref = (CellRef) new Parser(false).parse("aB1048576");
+        assertEquals(new Address(28, 1048576), ref.getAddress());
+        assertEquals(Address.parse("$AB$1048576"), ref.getAddress());
+    }
+
+    @Test
+    void acceptsSemicolonSeparator() {
+        assertEquals(AstOptimizer.key(new Parser(false).parse("SUM(A1,2)")),
+                AstOptimizer.key(new Parser(false).parse("SUM(A1;2)")));
+    }
+
+    @Test
+    void rejectsMalformedInput() {
+        Parser p = new Parser(false);
+        for (String bad : new String[]{"", "1+", "(1+2", "1+2)", "A1:", "FOO", "SUM(1,", "1 2", "A1 ? 2", "A 1",
+                "AAAAAAA1+1", "A1:AAAAAAA2", "ZZZZZZZZZZZZZZ1"}) {
+            assertThrows(IllegalArgumentException.class, () -> p.parse(bad), bad);
+        }
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, () -> p.parse("NOPE(1)"));
+        assertTrue(ex.getMessage().contains("NOPE"));
+    }
+
+    @Test
+    void acceptsColumnsUpToTheAddressLimit() {
+        CellRef ref = (CellRef) new Parser(false).parse("ZZZZZZ1");
+        assertEquals(Address.parse("ZZZZZZ1"), ref.getAddress());
+        // longer names are still function names
+        assertNotNull(new Parser(false).parse("AVERAGE(A1:A3)"));
+    }
+}
@@ -0,0 +1,65 @@
+package project.spreadsheet.parser;
+
+import org.junit.jupiter.api.Test;
+import project.spreadsheet.formula.EvalContext;
+import project.spreadsheet.sheet.Address;
+import project.spreadsheet.sheet.Spreadsheet;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TemplateTableTest {
+
+    @Test
+    void canonicalFormIsRelative() {
+        assertEquals("R[0]C[-2]*R[0]C[-1]", R1C1Notation.canonical("B7 * c7", 4, 7));
+        assertEquals("SUM(R[-6]C[-3]:R[0]C[-3])+2.50", R1C1Notation.canonical("sum (A1:A7) + 2.50", 4, 7));
+        assertEquals("A 1", R1C1Notation.canonical("A  1", 4, 7));
+        assertEquals("SUM(A1:A7)+2.50", R1C1Notation.toA1("SUM(R[-6]C[-3]:R[0]C[-3])+2.50", 4, 7));
+        assertThrows(IllegalArgumentException.class, () -> R1C1Notation.canonical("R[0]C[0]", 1, 1));
+    }
+
+    @Test
+    void filledDownFormulasShareOneTemplate() {
+        Spreadsheet sheet = new Spreadsheet();
+        for (int r = 1; r <= 500; r++) {
+            sheet.setRawContent(new Address(2, r), Integer.toString(r));
+            sheet.setRawContent(new Address(3, r), "2");
+            sheet.setRawContent(new Address(4, r), "=B" + r + "*C" + r);
+        }
+        assertEquals(1, sheet.getTemplates().size());
+        assertSame(sheet.getBlock(4, 1).template(0), sheet.getBlock(4, 500).template(499 % 128));
+        assertEquals("=B321*C321", sheet.getRawContent(Address.parse("D321")));
+
+        EvalContext ctx = new EvalContext(sheet);
+        assertEquals(642.0, ctx.getCellValue(Address.parse("D321")));
+
+        List<Address> dirty = sheet.setRawContent(Address.parse("B321"), "10");
+        assertTrue(dirty.contains(Address.parse("D321")));
+        assertEquals(2, dirty.size());
+        assertEquals(20.0, ctx.getCellValue(Address.parse("D321")));
+    }
+
+    @Test
+    void rangesMoveWithTheFormula() {
+        Spreadsheet sheet = new Spreadsheet();
+        for (int r = 1; r <= 10; r++) {
+            sheet.setRawContent(new Address(1, r), Integer.toString(r));
+            sheet.setRawContent(new Address(2, r), "=SUM(A1:A" + r + ")");
+        }
+        assertEquals(10, sheet.getTemplates().size()); // every range has a different length
+
+        sheet.setRawContent(Address.parse("C1"), "=SUM(A1:A2)");
+        sheet.setRawContent(Address.parse("C5"), "=SUM(A5:A6)");
+        assertEquals(11, sheet.getTemplates().size());
+
+        EvalContext ctx = new EvalContext(sheet);
+        assertEquals(3.0, ctx.getCellValue(Address.parse("C1")));
+        assertEquals(11.0, ctx.getCellValue(Address.parse("C5")));
+        assertEquals(55.0, ctx.getCellValue(Address.parse("B10")));
+    }
+}
@@ -0,0 +1,42 @@
+package project.spreadsheet.sheet;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class LongObjectMapTest {
+
+    @Test
+    void behavesLikeHashMapUnderRandomOps() {
+        LongObjectMap<Integer> map = new LongObjectMap<>();
+        Map<Long, Integer> ref = new HashMap<>();
+        Random rnd = new Random(42);
+
+        for (int n = 0; n < 200_000; n++) {
+            long key = Address.key(rnd.nextInt(300) + 1, rnd.nextInt(300) + 1);
+            int op = rnd.nextInt(3);
+            if (op == 0) {
+                assertEquals(ref.put(key, n), map.put(key, n));
+            } else if (op == 1) {
+                assertEquals(ref.remove(key), map.remove(key));
+            } else {
+                assertEquals(ref.get(key), map.get(key));
+            }
+        }
+        assertEquals(ref.size(), map.size());
+    }
+
+    @Test
+    void packedKeysRoundTrip() {
+        long key = Address.key(18278, 1_048_576);
+        assertEquals(18278, Address.columnOf(key));
+        assertEquals(1_048_576, Address.rowOf(key));
+        assertEquals(Address.parse("ZZZ1048576"), Address.fromKey(key));
+        assertNull(new LongObjectMap<String>().get(key));
+    }
+}
@@ -0,0 +1,158 @@
+package project.spreadsheet.sheet;
+
+import org.junit.jupiter.api.Test;
+import project.spreadsheet.controller.SpreadsheetController;
+import project.spreadsheet.formula.EvalContext;
+import project.spreadsheet.io.S2VReader;
+import project.spreadsheet.io.S2VWriter;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SheetVersionTest {
+
+    @Test
+    void versionsKeepTheirCellsAndValues() {
+        Spreadsheet sheet = new Spreadsheet();
+        EvalContext ctx = new EvalContext(sheet);
+        sheet.setRawContent(Address.parse("A1"), "2");
+        sheet.setRawContent(Address.parse("B1"), "=A1*10");
+        ctx.getCellValue(Address.parse("B1"));
+        SheetVersion v1 = sheet.publish();
+
+        sheet.setRawContent(Address.parse("A1"), "3");
+        sheet.setRawContent(Address.parse("C1"), "note");
+        ctx.getCellValue(Address.parse("B1"));
+        SheetVersion v2 = sheet.publish();
+
+        assertEquals(1, v1.getNumber());
+        assertEquals(2, v2.getNumber());
+        assertSame(v2, sheet.currentVersion());
+
+        assertEquals("2.0", v1.getRawContent(Address.parse("A1")));
+        assertEquals(20.0, v1.getCellValue(Address.parse("B1")));
+        assertEquals("", v1.getRawContent(Address.parse("C1")));
+        assertEquals(2, v1.size());
+
+        assertEquals("3.0", v2.getRawContent(Address.parse("A1")));
+        assertEquals(30.0, v2.getCellValue(Address.parse("B1")));
+        assertEquals("note", v2.getRawContent(Address.parse("C1")));
+        assertEquals(0.0, v2.getCellValue(Address.parse("C1")));
+        assertEquals(3, v2.size());
+    }
+
+    @Test
+    void unchangedBlocksAreShared() {
+        Spreadsheet sheet = new Spreadsheet();
+        sheet.setRawContent(Address.parse("A1"), "1");
+        sheet.setRawContent(Address.parse("A1000"), "2");
+        SheetVersion v1 = sheet.publish();
+
+        sheet.setRawContent(Address.parse("A1000"), "5");
+        sheet.setRawContent(Address.parse("A2000"), "6");
+        SheetVersion v2 = sheet.publish();
+
+        assertSame(v1.getBlock(1, 1), v2.getBlock(1, 1));
+        assertNotSame(v1.getBlock(1, 1000), v2.getBlock(1, 1000));
+        assertNull(v1.getBlock(1, 2000));
+        // published blocks are copies, not the sheet's own
+        assertNotSame(sheet.getBlock(1, 1), v2.getBlock(1, 1));
+    }
+
+    @Test
+    void unchangedStripesAreShared() {
+        Spreadsheet sheet = new Spreadsheet();
+        EvalContext ctx = new EvalContext(sheet);
+        sheet.setRawContent(Address.parse("A1"), "1");
+        sheet.setRawContent(Address.parse("A1000"), "2");
+        sheet.setRawContent(Address.parse("A2000"), "=A1000*3");
+        ctx.getCellValue(Address.parse("A2000"));
+        SheetVersion v1 = sheet.publish();
+
+        // stripes 0, 7 and 15 hold block rows 0, 7 and 15
+        sheet.setRawContent(Address.parse("A1000"), "5");
+        SheetVersion v2 = sheet.publish();
+        assertSame(v1.stripe(0), v2.stripe(0));
+        assertNotSame(v1.stripe(7), v2.stripe(7));
+        assertNotSame(v1.stripe(15), v2.stripe(15));
+        assertThrows(IllegalStateException.class, () -> v2.getCellValue(Address.parse("A2000")));
+
+        // a computed value alone changes its stripe too
+        ctx.getCellValue(Address.parse("A2000"));
+        SheetVersion v3 = sheet.publish();
+        assertSame(v2.stripe(7), v3.stripe(7));
+        assertEquals(15.0, v3.getCellValue(Address.parse("A2000")));
+        assertEquals(1.0, v3.getCellValue(Address.parse("A1")));
+    }
+
+    @Test
+    void staleFormulasHaveNoPublishedValue() {
+        Spreadsheet sheet = new Spreadsheet();
+        sheet.setRawContent(Address.parse("A1"), "=B1+1");
+        SheetVersion v = sheet.publish();
+
+        assertTrue(v.findCell(Address.parse("A1")).isPresent());
+        assertThrows(IllegalStateException.class, () -> v.getCellValue(Address.parse("A1")));
+    }
+
+    @Test
+    void readersSeeConsistentVersionsWhileTheWriterEdits() throws Exception {
+        SpreadsheetController controller = new SpreadsheetController(new Spreadsheet(), new S2VReader(), new S2VWriter());
+        int rows = 300;
+        Map<String, String> cells = new LinkedHashMap<>();
+        for (int r = 1; r <= rows; r++) {
+            cells.put("A" + r, "0");
+            cells.put("B" + r, "=A" + r + "*2");
+        }
+        cells.put("C1", "=SUM(B1:B" + rows + ")");
+        controller.setCellContents(cells);
+        controller.setPublishVersions(true);
+
+        // every version has A(r) = its round for all r, so C1 = 2 * rows * round
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<String> failure = new AtomicReference<>();
+        List<Thread> readers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread reader = new Thread(() -> {
+                long seen = 0;
+                while (!done.get() && failure.get() == null) {
+                    SheetVersion v = controller.getVersion();
+                    if (v.getNumber() < seen) failure.set("version went back from " + seen + " to " + v.getNumber());
+                    seen = v.getNumber();
+                    double round = v.getCellValue(1, 1);
+                    for (int r = 1; r <= rows; r++) {
+                        if (v.getCellValue(1, r) != round || v.getCellValue(2, r) != round * 2) {
+                            failure.set("row " + r + " of version " + v.getNumber() + " is from another round");
+                        }
+                    }
+                    if (v.getCellValue(3, 1) != 2 * rows * round) failure.set("C1 of version " + v.getNumber());
+                }
+            });
+            reader.start();
+            readers.add(reader);
+        }
+
+        for (int round = 1; round <= 200; round++) {
+            Map<String, String> edits = new LinkedHashMap<>();
+            for (int r = 1; r <= rows; r++) edits.put("A" + r, Integer.toString(round));
+            controller.setCellContents(edits);
+        }
+        done.set(true);
+        for (Thread reader : readers) reader.join();
+
+        assertNull(failure.get());
+        assertEquals(200.0, controller.getVersion().getCellValue(1, rows));
+        assertEquals(2.0 * rows * 200, controller.getVersion().getCellValue(3, 1));
+    }
+}
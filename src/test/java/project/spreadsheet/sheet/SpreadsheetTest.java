@@ -0,0 +1,175 @@
+package project.spreadsheet.sheet;
+
+import org.junit.jupiter.api.Test;
+import project.spreadsheet.content.FormulaContent;
+import project.spreadsheet.content.NumericContent;
+import project.spreadsheet.content.TextContent;
+import project.spreadsheet.formula.EvalContext;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SpreadsheetTest {
+
+    @Test
+    void storesEachContentKind() {
+        Spreadsheet sheet = new Spreadsheet();
+        sheet.setRawContent(Address.parse("A1"), "2.5");
+        sheet.setRawContent(Address.parse("B1"), "hello");
+        sheet.setRawContent(Address.parse("C1"), "=A1*2");
+
+        assertTrue(sheet.findCell(Address.parse("A1")).get().getContent() instanceof NumericContent);
+        assertTrue(sheet.findCell(Address.parse("B1")).get().getContent() instanceof TextContent);
+        assertTrue(sheet.findCell(Address.parse("C1")).get().getContent() instanceof FormulaContent);
+        assertEquals("2.5", sheet.getRawContent(Address.parse("A1")));
+        assertEquals("hello", sheet.getRawContent(Address.parse("B1")));
+        assertEquals("=A1*2", sheet.getRawContent(Address.parse("C1")));
+        assertEquals("", sheet.getRawContent(Address.parse("D1")));
+    }
+
+    @Test
+    void usedAddressesSpanBlocks() {
+        Spreadsheet sheet = new Spreadsheet();
+        Set<Address> expected = new HashSet<>();
+        int[][] coords = {{1, 1}, {CellBlock.COLS, CellBlock.ROWS}, {CellBlock.COLS + 1, 1},
+                {1, CellBlock.ROWS + 1}, {702, 100000}};
+        for (int[] c : coords) {
+            Address a = new Address(c[0], c[1]);
+            sheet.setRawContent(a, "1");
+            expected.add(a);
+        }
+
+        assertEquals(expected, new HashSet<>(sheet.getUsedAddresses()));
+        assertEquals(expected.size(), sheet.getUsedAddresses().size());
+    }
+
+    @Test
+    void emptyContentRemovesCell() {
+        Spreadsheet sheet = new Spreadsheet();
+        Address a = Address.parse("B7");
+        sheet.setRawContent(a, "=1+1");
+        sheet.setRawContent(a, "");
+
+        assertFalse(sheet.findCell(a).isPresent());
+        assertTrue(sheet.getUsedAddresses().isEmpty());
+    }
+
+    @Test
+    void batchInvalidatesTheUnionOnceInOrder() {
+        Spreadsheet sheet = new Spreadsheet();
+        sheet.setRawContent(Address.parse("C1"), "=SUM(A1:A3)");
+        sheet.setRawContent(Address.parse("D1"), "=C1+B1");
+        sheet.setRawContent(Address.parse("B1"), "=A2");
+
+        Map<Address, String> edits = new LinkedHashMap<>();
+        edits.put(Address.parse("A1"), "1");
+        edits.put(Address.parse("A2"), "2");
+        edits.put(Address.parse("A3"), "=A1*3");
+        List<Address> dirty = sheet.setRawContents(edits);
+
+        assertEquals(6, dirty.size());   // A1-A3, B1, C1, D1
+        assertEquals(6, new HashSet<>(dirty).size());
+        assertTrue(dirty.indexOf(Address.parse("A3")) < dirty.indexOf(Address.parse("C1")));
+        assertTrue(dirty.indexOf(Address.parse("C1")) < dirty.indexOf(Address.parse("D1")));
+        assertTrue(dirty.indexOf(Address.parse("B1")) < dirty.indexOf(Address.parse("D1")));
+        assertEquals("=A1*3", sheet.getRawContent(Address.parse("A3")));
+    }
+
+    @Test
+    void badFormulaRejectsTheWholeBatch() {
+        Spreadsheet sheet = new Spreadsheet();
+        sheet.setRawContent(Address.parse("A1"), "1");
+
+        Map<Address, String> edits = new LinkedHashMap<>();
+        edits.put(Address.parse("A1"), "5");
+        edits.put(Address.parse("B1"), "=A1+");
+        assertThrows(IllegalArgumentException.class, () -> sheet.setRawContents(edits));
+
+        assertEquals("1.0", sheet.getRawContent(Address.parse("A1")));
+        assertFalse(sheet.getUsedAddresses().contains(Address.parse("B1")));
+    }
+
+    @Test
+    void concurrentWritersKeepCellsAndDependencies() throws Exception {
+        Spreadsheet sheet = new Spreadsheet();
+        int threads = 8;
+        int rows = 2000;
+        // writer t owns the rows r with r % threads == t, so all of them share every block;
+        // C(r) reads B of the next row, which another writer owns
+        List<Thread> writers = new ArrayList<>();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        for (int t = 0; t < threads; t++) {
+            int owner = t;
+            Thread writer = new Thread(() -> {
+                try {
+                    for (int r = 1; r <= rows; r++) {
+                        if (r % threads != owner) continue;
+                        sheet.setRawContent(new Address(1, r), Integer.toString(r));
+                        sheet.setRawContent(new Address(2, r), "=A" + r + "*2");
+                        sheet.setRawContent(new Address(3, r), "=B" + (r % rows + 1) + "+1");
+                    }
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            });
+            writer.start();
+            writers.add(writer);
+        }
+        for (Thread writer : writers) writer.join();
+
+        assertNull(failure.get());
+        assertEquals(3 * rows, sheet.getUsedAddresses().size());
+        EvalContext ctx = new EvalContext(sheet);
+        for (int r = 1; r <= rows; r++) {
+            assertEquals(2.0 * (r % rows + 1) + 1, ctx.getCellValue(3, r));
+        }
+
+        List<Address> dirty = sheet.setRawContent(Address.parse("A1"), "10");
+        assertEquals(List.of(Address.parse("A1"), Address.parse("B1"), new Address(3, rows)), dirty);
+        assertEquals(21.0, ctx.getCellValue(3, rows));
+    }
+
+    @Test
+    void concurrentWritersKeepRangeDependencies() throws Exception {
+        Spreadsheet sheet = new Spreadsheet();
+        int threads = 8;
+        int rows = 2000;
+        // every writer adds ranges over the same column
+        List<Thread> writers = new ArrayList<>();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        for (int t = 0; t < threads; t++) {
+            int owner = t;
+            Thread writer = new Thread(() -> {
+                try {
+                    for (int r = 1; r <= rows; r++) {
+                        if (r % threads != owner) continue;
+                        sheet.setRawContent(new Address(1, r), "1");
+                        sheet.setRawContent(new Address(2, r), "=SUM(A" + r + ":A" + (r + 1) + ")");
+                    }
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            });
+            writer.start();
+            writers.add(writer);
+        }
+        for (Thread writer : writers) writer.join();
+
+        assertNull(failure.get());
+        for (int r = 2; r <= rows; r++) {
+            assertEquals(Set.of(new Address(2, r - 1), new Address(2, r)),
+                    sheet.getDependencyGraph().getDependents(new Address(1, r)));
+        }
+    }
+}